@@ -0,0 +1,28 @@
+package minesweeper;
+
+class BeginnerGame implements Difficulty {
+	@Override
+	public int getWidth() {
+		return 8;
+	}
+
+	@Override
+	public int getHeight() {
+		return 8;
+	}
+
+	@Override
+	public int getNMines() {
+		return 10;
+	}
+
+	@Override
+	public String getName() {
+		return "Beginner";
+	}
+
+	@Override
+	public ScoreDifficulty getDifficulty() {
+		return ScoreDifficulty.BEGINNER;
+	}
+}
@@ -0,0 +1,257 @@
+package minesweeper;
+
+/**
+ * One bit per cell of a board, with each row packed into its own run of
+ * longs so that a word holds 64 neighbouring cells of one row. Whole board
+ * questions are answered a word at a time: the eight neighbours of 64 cells
+ * are the word itself and the rows above and below, shifted one bit left and
+ * right, so there are no per cell bounds checks. Bits past the width of a
+ * row are always clear.
+ * <p>
+ * Neighbour counts are bit sliced: {@link #countRow} adds the eight shifted
+ * words with full adders into four words, holding the ones, twos, fours and
+ * eights of the count of each of the 64 cells.
+ */
+final class Bitboard {
+
+	/** The planes of a count, in the order {@link #countRow} writes them */
+	static final int ONES = 0, TWOS = 1, FOURS = 2, EIGHTS = 3;
+
+	private final int width, height, words;
+	private final long[] bits;
+	// the cells of the last word of a row that are on the board
+	private final long lastMask;
+
+	Bitboard(int width, int height) {
+		this.width = width;
+		this.height = height;
+		this.words = wordsFor(width);
+		this.bits = new long[words * height];
+		this.lastMask = lastMask(width);
+	}
+
+	int getWidth() {
+		return width;
+	}
+
+	int getHeight() {
+		return height;
+	}
+
+	/** The number of longs in each row */
+	int getWords() {
+		return words;
+	}
+
+	/** The number of longs a row of the given width takes */
+	static int wordsFor(int width) {
+		return (width + 63) >>> 6;
+	}
+
+	/** The bits of the last word of a row that are on the board */
+	static long lastMask(int width) {
+		return -1L >>> (-width & 63);
+	}
+
+	/** Word w of row y */
+	long word(int y, int w) {
+		return bits[y * words + w];
+	}
+
+	boolean get(int x, int y) {
+		return (bits[y * words + (x >>> 6)] & (1L << x)) != 0;
+	}
+
+	void clear(int x, int y) {
+		bits[y * words + (x >>> 6)] &= ~(1L << x);
+	}
+
+	/** Sets word w of row y, which must leave the bits past the width clear */
+	void setWord(int y, int w, long value) {
+		bits[y * words + w] = value;
+	}
+
+	boolean get(int i) {
+		int y = i / width;
+		int x = i - y * width;
+		return (bits[y * words + (x >>> 6)] & (1L << x)) != 0;
+	}
+
+	void set(int i) {
+		int y = i / width;
+		int x = i - y * width;
+		bits[y * words + (x >>> 6)] |= 1L << x;
+	}
+
+	void clear(int i) {
+		int y = i / width;
+		int x = i - y * width;
+		bits[y * words + (x >>> 6)] &= ~(1L << x);
+	}
+
+	int cardinality() {
+		int n = 0;
+		for (long b : bits) {
+			n += Long.bitCount(b);
+		}
+		return n;
+	}
+
+	/** The index of the first set cell at or after i, or -1 */
+	int nextSetBit(int i) {
+		if (i >= width * height) {
+			return -1;
+		}
+		int y = i / width;
+		int x = i - y * width;
+		int w = y * words + (x >>> 6);
+		long b = bits[w] & (-1L << x);
+		while (b == 0) {
+			if (++w == bits.length) {
+				return -1;
+			}
+			b = bits[w];
+		}
+		int row = w / words;
+		return row * width + ((w - row * words) << 6) + Long.numberOfTrailingZeros(b);
+	}
+
+	Bitboard and(Bitboard other) {
+		Bitboard result = new Bitboard(width, height);
+		for (int w = 0; w < bits.length; w++) {
+			result.bits[w] = bits[w] & other.bits[w];
+		}
+		return result;
+	}
+
+	Bitboard or(Bitboard other) {
+		Bitboard result = new Bitboard(width, height);
+		for (int w = 0; w < bits.length; w++) {
+			result.bits[w] = bits[w] | other.bits[w];
+		}
+		return result;
+	}
+
+	Bitboard andNot(Bitboard other) {
+		Bitboard result = new Bitboard(width, height);
+		for (int w = 0; w < bits.length; w++) {
+			result.bits[w] = bits[w] & ~other.bits[w];
+		}
+		return result;
+	}
+
+	Bitboard not() {
+		Bitboard result = new Bitboard(width, height);
+		for (int w = 0; w < bits.length; w++) {
+			result.bits[w] = ~bits[w] & (((w + 1) % words == 0) ? lastMask : -1L);
+		}
+		return result;
+	}
+
+	/** The cells with at least one set neighbour, not counting the cell itself */
+	Bitboard around() {
+		Bitboard result = new Bitboard(width, height);
+		for (int y = 0; y < height; y++) {
+			int row = y * words;
+			for (int w = 0; w < words; w++) {
+				long b = west(bits, row, w) | east(bits, row, w, words);
+				if (y > 0) {
+					int up = row - words;
+					b |= bits[up + w] | west(bits, up, w) | east(bits, up, w, words);
+				}
+				if (y < height - 1) {
+					int down = row + words;
+					b |= bits[down + w] | west(bits, down, w) | east(bits, down, w, words);
+				}
+				result.bits[row + w] = b & ((w == words - 1) ? lastMask : -1L);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * The cells with exactly n set neighbours, for n from 0 to 8, counted
+	 * with {@link #countRow}
+	 */
+	Bitboard countEquals(int n) {
+		Bitboard result = new Bitboard(width, height);
+		long[] sums = new long[4 * words];
+		long ones = ((n & 1) != 0) ? -1L : 0, twos = ((n & 2) != 0) ? -1L : 0;
+		long fours = ((n & 4) != 0) ? -1L : 0, eights = ((n & 8) != 0) ? -1L : 0;
+		for (int y = 0; y < height; y++) {
+			countRow(y, sums);
+			for (int w = 0; w < words; w++) {
+				result.bits[y * words + w] = ~(sums[ONES * words + w] ^ ones) & ~(sums[TWOS * words + w] ^ twos)
+						& ~(sums[FOURS * words + w] ^ fours) & ~(sums[EIGHTS * words + w] ^ eights)
+						& ((w == words - 1) ? lastMask : -1L);
+			}
+		}
+		return result;
+	}
+
+	/** Counts the set neighbours of every cell in row y into sums, plane p of word w at p * words + w */
+	void countRow(int y, long[] sums) {
+		countRow((y > 0) ? bits : null, (y - 1) * words, bits, y * words, (y < height - 1) ? bits : null,
+				(y + 1) * words, words, lastMask, sums);
+	}
+
+	/**
+	 * The adder at the heart of the board: counts, for the 64 cells of each
+	 * word of a row, how many of their eight neighbours are set. The rows above
+	 * and below are null on the edges of the board. The eight neighbour words
+	 * are summed by full adders: three adders take them to ones and carries,
+	 * one more adds the ones, and the carries are added the same way into the
+	 * twos, fours and eights.
+	 */
+	static void countRow(long[] up, int upAt, long[] row, int rowAt, long[] down, int downAt, int words,
+			long lastMask, long[] sums) {
+		for (int w = 0; w < words; w++) {
+			long nw = 0, n = 0, ne = 0, sw = 0, s = 0, se = 0;
+			if (up != null) {
+				nw = west(up, upAt, w);
+				n = up[upAt + w];
+				ne = east(up, upAt, w, words);
+			}
+			if (down != null) {
+				sw = west(down, downAt, w);
+				s = down[downAt + w];
+				se = east(down, downAt, w, words);
+			}
+			long we = west(row, rowAt, w);
+			long ea = east(row, rowAt, w, words);
+
+			// three neighbours to a one and a two
+			long a = nw ^ n ^ ne;
+			long ca = (nw & n) | (ne & (nw ^ n));
+			long b = we ^ ea ^ sw;
+			long cb = (we & ea) | (sw & (we ^ ea));
+			long c = s ^ se;
+			long cc = s & se;
+
+			long ones = a ^ b ^ c;
+			long cd = (a & b) | (c & (a ^ b));
+
+			// the four carries, each worth two
+			long t = ca ^ cb ^ cc;
+			long ct = (ca & cb) | (cc & (ca ^ cb));
+			long twos = t ^ cd;
+			long cu = t & cd;
+
+			long mask = (w == words - 1) ? lastMask : -1L;
+			sums[ONES * words + w] = ones & mask;
+			sums[TWOS * words + w] = twos & mask;
+			sums[FOURS * words + w] = (ct ^ cu) & mask;
+			sums[EIGHTS * words + w] = (ct & cu) & mask;
+		}
+	}
+
+	/** Word w of a row shifted so that each cell sees its neighbour to the west */
+	private static long west(long[] bits, int rowAt, int w) {
+		return (bits[rowAt + w] << 1) | ((w > 0) ? bits[rowAt + w - 1] >>> 63 : 0);
+	}
+
+	/** Word w of a row shifted so that each cell sees its neighbour to the east */
+	private static long east(long[] bits, int rowAt, int w, int words) {
+		return (bits[rowAt + w] >>> 1) | ((w < words - 1) ? bits[rowAt + w + 1] << 63 : 0);
+	}
+}
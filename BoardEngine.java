@@ -0,0 +1,873 @@
+package minesweeper;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The rules of a single game of mine sweeper, kept apart from the JavaFX scene
+ * graph so that they can run headless and on boards far larger than the window
+ * can show. Every cell is packed into one byte: the low nibble holds the number
+ * of adjacent mines and the high bits hold the mine, revealed and flagged
+ * state. Cells are addressed either by (x, y) or by the linear index
+ * {@code y * width + x}.
+ * <p>
+ * Everything a move needs is kept up to date as the board changes: each cell
+ * knows how many of its neighbours are flagged and the board knows how many
+ * safe cells are still hidden, so no move ever has to scan the whole board.
+ * Once the game is over the cells are left as they were; the mines are shown
+ * by whoever draws the board.
+ * <p>
+ * Moves can be undone and redone once a history depth is set. Each move
+ * appends the cells it changed to one int log, a revealed cell as its index
+ * and a toggled flag as the complement of its index, so undoing even a flood
+ * fill over thousands of cells walks only those entries and never copies the
+ * board. The oldest moves are forgotten past the history depth.
+ * <p>
+ * Neighbours come from the board's {@link Topology}, walked as a table of
+ * offsets built once per board, so the same rules play on square, wrapping
+ * and hexagonal boards. Square boards count their mines with bitboards.
+ */
+public class BoardEngine {
+
+	public enum Status {
+		PLAYING, WON, LOST
+	}
+
+	private static final int ADJACENT = 0x0F;
+	private static final int MINE = 0x10;
+	private static final int REVEALED = 0x20;
+	private static final int FLAGGED = 0x40;
+
+	/** Past this many cells a move is reported as having changed the whole board */
+	private static final int MAXTRACKED = 1 << 16;
+
+	/**
+	 * Boards with at least this many cells have their counts made in bands of
+	 * rows on every core; set minesweeper.parallel past the largest board to
+	 * make them on the calling thread
+	 */
+	private static final int PARALLELCELLS = Integer.getInteger("minesweeper.parallel", 1 << 20);
+	/** The fewest cells a band of rows is split down to */
+	private static final int BANDCELLS = 1 << 16;
+
+	/** Writes the counts one word at a time, visiting only the cells that hold or touch a mine */
+	static final RowWriter SCALAR = BoardEngine::writeRow;
+	/**
+	 * Writes the counts a vector of cells at a time, or null if the Vector API
+	 * is not there. It is an incubator module, so the JVM has to be started
+	 * with --add-modules jdk.incubator.vector, and the writer is only built by
+	 * the Maven build; set minesweeper.vector to false to leave it unused
+	 */
+	static final RowWriter VECTOR = vectorWriter();
+	private static final RowWriter ROWS = (VECTOR != null
+			&& !"false".equals(System.getProperty("minesweeper.vector"))) ? VECTOR : SCALAR;
+
+	private final int width, height, nMines;
+	private final long seed;
+	private final Topology topology;
+	private final Topology.Neighbours neighbours;
+	private final byte[] cells;
+	private final byte[] adjacentFlags;
+
+	// work queue for the flood fill and the cells changed by the last move,
+	// both kept between calls so that a move does not allocate
+	private int[] queue = new int[64];
+	private int[] changed = new int[64];
+	private int numChanged;
+	private boolean changedOverflow;
+
+	// the undo log: the cells each move changed, oldest move first. Entries
+	// logStart to logEnd are live, and moveEnds[k] is where move k's entries end.
+	// Moves firstMove to doneMoves can be undone, doneMoves to numMoves redone
+	private int historyDepth;
+	private int[] log = new int[64];
+	private int[] moveEnds = new int[16];
+	private int logStart, logEnd, moveStart, redoEnd;
+	private int firstMove, doneMoves, numMoves;
+	private boolean recording;
+
+	private int numRevealed, numFlagged, hiddenSafe;
+	private int explodedCell = -1;
+	private int firstClick = -1;
+	private boolean generated;
+	private Status status = Status.PLAYING;
+
+	public BoardEngine(int width, int height, int nMines) {
+		this(width, height, nMines, new SplittableRandom().nextLong());
+	}
+
+	/**
+	 * A board whose mines are placed from the given seed. The same seed and the
+	 * same first click always give the same board
+	 */
+	public BoardEngine(int width, int height, int nMines, long seed) {
+		this(width, height, nMines, seed, Topology.SQUARE);
+	}
+
+	/** A board from the given seed whose cells are connected the given way */
+	public BoardEngine(int width, int height, int nMines, long seed, Topology topology) {
+		if (width < 1 || height < 1) {
+			throw new IllegalArgumentException("Board must be at least 1x1");
+		}
+		if ((long) width * height > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Board is too large");
+		}
+		if (nMines < 0 || nMines >= width * height) {
+			throw new IllegalArgumentException("Mines must be between 0 and " + (width * height - 1));
+		}
+		if (topology.getMaxDegree() > ADJACENT) {
+			throw new IllegalArgumentException("A cell can have at most " + ADJACENT + " neighbours");
+		}
+		this.width = width;
+		this.height = height;
+		this.nMines = nMines;
+		this.seed = seed;
+		this.topology = topology;
+		this.neighbours = topology.neighbours(width, height);
+		this.cells = new byte[width * height];
+		this.adjacentFlags = new byte[width * height];
+		this.hiddenSafe = width * height - nMines;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getNMines() {
+		return nMines;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public Topology getTopology() {
+		return topology;
+	}
+
+	/** The neighbours of every cell, as the solvers walk them */
+	public Topology.Neighbours getNeighbours() {
+		return neighbours;
+	}
+
+	public int getNumRevealed() {
+		return numRevealed;
+	}
+
+	public int getNumFlagged() {
+		return numFlagged;
+	}
+
+	/** The number of safe cells the player still has to reveal */
+	public int getHiddenSafe() {
+		return hiddenSafe;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public boolean isGenerated() {
+		return generated;
+	}
+
+	public boolean isGameOver() {
+		return status != Status.PLAYING;
+	}
+
+	/**
+	 * The index of the cell the mines were placed around, which together with
+	 * the seed decides the board, or -1 if they were placed some other way
+	 */
+	public int getFirstClick() {
+		return firstClick;
+	}
+
+	/** The index of the mine that ended the game, or -1 */
+	public int getExplodedCell() {
+		return explodedCell;
+	}
+
+	public int index(int x, int y) {
+		return y * width + x;
+	}
+
+	/** The number of cells changed by the last reveal, flag or chord */
+	public int getChangedCount() {
+		return numChanged;
+	}
+
+	/** The index of the i'th cell changed by the last reveal, flag or chord */
+	public int getChangedCell(int i) {
+		return changed[i];
+	}
+
+	/**
+	 * True if the last move changed too many cells to list, in which case the
+	 * whole board should be repainted
+	 */
+	public boolean isChangedOverflow() {
+		return changedOverflow;
+	}
+
+	public boolean hasMine(int x, int y) {
+		return (cells[index(x, y)] & MINE) != 0;
+	}
+
+	/** The same as {@link #hasMine(int, int)} for the cell with the given index */
+	boolean hasMine(int i) {
+		return (cells[i] & MINE) != 0;
+	}
+
+	public boolean isRevealed(int x, int y) {
+		return (cells[index(x, y)] & REVEALED) != 0;
+	}
+
+	/** The same as {@link #isRevealed(int, int)} for the cell with the given index */
+	boolean isRevealed(int i) {
+		return (cells[i] & REVEALED) != 0;
+	}
+
+	public boolean isFlagged(int x, int y) {
+		return (cells[index(x, y)] & FLAGGED) != 0;
+	}
+
+	/** The same as {@link #isFlagged(int, int)} for the cell with the given index */
+	boolean isFlagged(int i) {
+		return (cells[i] & FLAGGED) != 0;
+	}
+
+	public int getAdjacentMines(int x, int y) {
+		return cells[index(x, y)] & ADJACENT;
+	}
+
+	/** The same as {@link #getAdjacentMines(int, int)} for the cell with the given index */
+	int getAdjacentMines(int i) {
+		return cells[i] & ADJACENT;
+	}
+
+	public int getAdjacentFlags(int x, int y) {
+		return adjacentFlags[index(x, y)];
+	}
+
+	/** The number of moves kept for undo, 0 if moves are not recorded */
+	public int getHistoryDepth() {
+		return historyDepth;
+	}
+
+	/**
+	 * Keeps up to the given number of moves for undo and redo, forgetting the
+	 * oldest moves if more are already kept. 0 turns the history off
+	 */
+	public void setHistoryDepth(int moves) {
+		if (moves < 0) {
+			throw new IllegalArgumentException("History depth must not be negative");
+		}
+		historyDepth = moves;
+		trimHistory();
+	}
+
+	public boolean canUndo() {
+		return doneMoves > firstMove;
+	}
+
+	public boolean canRedo() {
+		return numMoves > doneMoves;
+	}
+
+	/**
+	 * Takes back the last move, ending a lost or won game if that move ended it.
+	 * Returns the number of cells changed, which can be read back with
+	 * {@link #getChangedCell(int)}
+	 */
+	public int undo() {
+		beginMove(false);
+		if (!canUndo()) {
+			return 0;
+		}
+		doneMoves--;
+		int start = (doneMoves == firstMove) ? logStart : moveEnds[doneMoves - 1];
+		for (int e = moveEnds[doneMoves] - 1; e >= start; e--) {
+			int c = log[e];
+			if (c < 0) {
+				flipFlag(~c);
+			} else if ((cells[c] & MINE) != 0) {
+				explodedCell = -1;
+				markChanged(c);
+			} else {
+				cells[c] &= ~REVEALED;
+				numRevealed--;
+				hiddenSafe++;
+				markChanged(c);
+			}
+		}
+		// every move is made on a board still being played
+		status = Status.PLAYING;
+		return numChanged;
+	}
+
+	/** Makes the last undone move again. Returns the number of cells changed */
+	public int redo() {
+		beginMove(false);
+		if (!canRedo()) {
+			return 0;
+		}
+		int start = (doneMoves == firstMove) ? logStart : moveEnds[doneMoves - 1];
+		for (int e = start; e < moveEnds[doneMoves]; e++) {
+			int c = log[e];
+			if (c < 0) {
+				flipFlag(~c);
+			} else if ((cells[c] & MINE) != 0) {
+				markChanged(c);
+				explode(c);
+			} else {
+				revealCell(c);
+			}
+		}
+		doneMoves++;
+		return numChanged;
+	}
+
+	/**
+	 * Places the mines as if the given cell had been clicked first, without
+	 * revealing anything. Does nothing if the mines are already placed
+	 */
+	public void generate(int x, int y) {
+		if (!generated) {
+			generateMines(x, y);
+		}
+	}
+
+	/**
+	 * Left click. Places the mines on the first call. Returns the number of
+	 * cells revealed, which can be read back with {@link #getChangedCell(int)}
+	 */
+	public int reveal(int x, int y) {
+		beginMove(true);
+		revealAt(index(x, y));
+		endMove();
+		return numChanged;
+	}
+
+	/** Right click. Flags or unflags a hidden cell. Returns true if the board changed */
+	public boolean toggleFlag(int x, int y) {
+		beginMove(true);
+		boolean changed = flagAt(index(x, y));
+		endMove();
+		return changed;
+	}
+
+	/**
+	 * Middle click. If a revealed number has as many flags around it as it has
+	 * adjacent mines every other hidden neighbour is revealed. Returns the
+	 * number of cells revealed
+	 */
+	public int chord(int x, int y) {
+		beginMove(true);
+		chordAt(x, y);
+		endMove();
+		return numChanged;
+	}
+
+	private boolean flagAt(int i) {
+		if (isGameOver() || (cells[i] & REVEALED) != 0) {
+			return false;
+		}
+
+		if ((cells[i] & FLAGGED) == 0 && numFlagged == nMines) {
+			return false;
+		}
+		flipFlag(i);
+		return true;
+	}
+
+	/** Flags an unflagged cell or unflags a flagged one, keeping the counts around it */
+	private void flipFlag(int i) {
+		cells[i] ^= FLAGGED;
+		int delta = ((cells[i] & FLAGGED) != 0) ? 1 : -1;
+		numFlagged += delta;
+
+		int k = neighbours.kindOf(i);
+		for (int e = neighbours.start(k); e < neighbours.end(k); e++) {
+			adjacentFlags[i + neighbours.delta(e)] += delta;
+		}
+		markChanged(i);
+		logChange(~i);
+	}
+
+	private void chordAt(int x, int y) {
+		int i = index(x, y);
+		if (isGameOver() || (cells[i] & REVEALED) == 0) {
+			return;
+		}
+
+		if (adjacentFlags[i] != (cells[i] & ADJACENT)) {
+			return;
+		}
+
+		int k = neighbours.kind(x, y);
+		for (int e = neighbours.start(k); e < neighbours.end(k); e++) {
+			revealAt(i + neighbours.delta(e));
+		}
+	}
+
+	/**
+	 * Places mines on exactly the cells whose bits are set, instead of drawing
+	 * them from the seed, for a board being restored from a save
+	 */
+	public void restoreMines(BitSet mines) {
+		if (generated) {
+			throw new IllegalStateException("Mines are already placed");
+		}
+		if (mines.cardinality() != nMines || mines.length() > cells.length) {
+			throw new IllegalArgumentException("Saved mines do not match the board");
+		}
+		Bitboard bits = new Bitboard(width, height);
+		for (int c = mines.nextSetBit(0); c >= 0; c = mines.nextSetBit(c + 1)) {
+			bits.set(c);
+		}
+		setMines(bits);
+		generated = true;
+	}
+
+	/**
+	 * Reveals or flags a single hidden cell as a saved game records it, without
+	 * flood filling. A revealed mine ends the game as if it had been clicked
+	 */
+	public void restoreCell(int i, boolean revealed, boolean flagged) {
+		beginMove(false);
+		if (!generated || isGameOver() || (cells[i] & (REVEALED | FLAGGED)) != 0) {
+			return;
+		}
+		if (revealed) {
+			if ((cells[i] & MINE) != 0) {
+				markChanged(i);
+				explode(i);
+			} else {
+				revealCell(i);
+			}
+		} else if (flagged) {
+			flagAt(i);
+		}
+	}
+
+	/**
+	 * Restores what the player could see of a whole board from a plane of two
+	 * bits per cell, low bits first, as a saved game stores it: 0 for hidden, 1
+	 * for revealed, 2 for flagged and 3 for the mine that ended the game. Like
+	 * {@link #restoreCell(int, boolean, boolean)} it does not flood fill, but it
+	 * skips four hidden cells at a time and does not track the cells it changes.
+	 * Bytes past the end of the board are ignored
+	 */
+	void restoreCells(byte[] plane) {
+		beginMove(false);
+		if (!generated || isGameOver()) {
+			return;
+		}
+		changedOverflow = true;
+		int exploded = -1;
+		for (int b = 0, end = Math.min(plane.length, (cells.length + 3) / 4); b < end; b++) {
+			for (int bits = plane[b] & 0xFF, i = b * 4; bits != 0 && i < cells.length; bits >>>= 2, i++) {
+				int state = bits & 3;
+				if (state == 3) {
+					exploded = i;
+				} else if (state == 2) {
+					if ((cells[i] & (REVEALED | FLAGGED)) == 0) {
+						flagAt(i);
+					}
+				} else if (state == 1 && (cells[i] & (REVEALED | FLAGGED)) == 0) {
+					if ((cells[i] & MINE) != 0) {
+						explode(i);
+						return;
+					}
+					cells[i] |= REVEALED;
+					numRevealed++;
+					hiddenSafe--;
+				}
+			}
+		}
+		if (hiddenSafe == 0) {
+			status = Status.WON;
+		} else if (exploded >= 0 && (cells[exploded] & MINE) != 0) {
+			// put back last, since nothing can change after it
+			explode(exploded);
+		}
+	}
+
+	/** The cells holding mines, one bit each */
+	Bitboard mineBits() {
+		return bits(MINE);
+	}
+
+	/** The revealed cells, one bit each */
+	Bitboard revealedBits() {
+		return bits(REVEALED);
+	}
+
+	private Bitboard bits(int flag) {
+		Bitboard bits = new Bitboard(width, height);
+		for (int y = 0, c = 0; y < height; y++) {
+			for (int x = 0; x < width; x += 64) {
+				long word = 0;
+				for (int b = 0, end = Math.min(64, width - x); b < end; b++, c++) {
+					word |= (long) ((cells[c] & flag) != 0 ? 1 : 0) << b;
+				}
+				bits.setWord(y, x >>> 6, word);
+			}
+		}
+		return bits;
+	}
+
+	/** Places the mines around the first click and counts them for the whole board at once */
+	private void generateMines(int fx, int fy) {
+		int first = index(fx, fy);
+		setMines(drawMines(width, height, nMines, seed, neighbours, first));
+
+		firstClick = first;
+		generated = true;
+	}
+
+	/**
+	 * Draws the mines of a board anywhere but the first click and its
+	 * neighbours, the same for every board with the same size, seed and first
+	 * click. This is a partial Fisher-Yates shuffle of the cell indices in
+	 * Floyd's form: a bitboard of the mines records which indices have been
+	 * drawn, so no array of indices is needed. The safe cells are cut out of
+	 * the index range before drawing instead of rejecting draws that land in
+	 * them.
+	 */
+	static Bitboard drawMines(int width, int height, int nMines, long seed, Topology.Neighbours neighbours,
+			int first) {
+		int size = width * height;
+		int k = neighbours.kindOf(first);
+		int[] safe = new int[neighbours.getMaxDegree() + 1];
+		int numSafe = 0;
+		safe[numSafe++] = first;
+		for (int e = neighbours.start(k); e < neighbours.end(k); e++) {
+			safe[numSafe++] = first + neighbours.delta(e);
+		}
+		if (size - numSafe < nMines) {
+			// too crowded to keep the neighbours clear, so only keep the clicked cell clear
+			numSafe = 1;
+		}
+		Arrays.sort(safe, 0, numSafe);
+		int candidates = size - numSafe;
+
+		SplittableRandom random = new SplittableRandom(seed);
+		Bitboard mines = new Bitboard(width, height);
+
+		for (int j = candidates - nMines; j < candidates; j++) {
+			int c = skipSafe(random.nextInt(j + 1), safe, numSafe);
+			if (mines.get(c)) {
+				c = skipSafe(j, safe, numSafe);
+			}
+			mines.set(c);
+		}
+		return mines;
+	}
+
+	/** Maps an index into the cells outside the sorted safe cells to an index into the board */
+	private static int skipSafe(int c, int[] safe, int numSafe) {
+		for (int k = 0; k < numSafe && c >= safe[k]; k++) {
+			c++;
+		}
+		return c;
+	}
+
+	/**
+	 * Writes the mine bit and the count of adjacent mines into every cell, a
+	 * row of bit sliced counts at a time. Each row only writes its own cells,
+	 * so a large board is split into bands of rows that are counted at the
+	 * same time. The bitboard only knows square neighbours, so other
+	 * topologies add one to each neighbour of every mine
+	 */
+	private void setMines(Bitboard mines) {
+		if (topology != Topology.SQUARE) {
+			for (int c = mines.nextSetBit(0); c >= 0; c = mines.nextSetBit(c + 1)) {
+				cells[c] |= MINE;
+				int k = neighbours.kindOf(c);
+				for (int e = neighbours.start(k); e < neighbours.end(k); e++) {
+					cells[c + neighbours.delta(e)]++;
+				}
+			}
+			return;
+		}
+		countMines(mines, cells.length >= PARALLELCELLS && ForkJoinPool.getCommonPoolParallelism() > 1, ROWS);
+	}
+
+	/**
+	 * Counts the mines of a square board on the calling thread or in bands of
+	 * rows on the common pool, with the given writer. Counting the same mines
+	 * again writes the same cells, so the ways can be compared on one board
+	 */
+	void countMines(Bitboard mines, boolean banded, RowWriter rows) {
+		if (banded) {
+			ForkJoinPool.commonPool().invoke(new MineRows(mines, 0, height, rows));
+		} else {
+			countMines(mines, 0, height, rows);
+		}
+	}
+
+	/** Writes the mines and counts of rows from up to but not including to */
+	private void countMines(Bitboard mines, int from, int to, RowWriter rows) {
+		long[] sums = new long[4 * mines.getWords()];
+		for (int y = from; y < to; y++) {
+			mines.countRow(y, sums);
+			rows.write(cells, y * width, width, mines, y, sums);
+		}
+	}
+
+	/**
+	 * The scalar row writer. Only the cells of a word that hold a mine or touch
+	 * one are visited, so most of a sparse board is never written
+	 */
+	private static void writeRow(byte[] cells, int base, int width, Bitboard mines, int y, long[] sums) {
+		int words = mines.getWords();
+		for (int w = 0; w < words; w++) {
+			long mine = mines.word(y, w);
+			long ones = sums[Bitboard.ONES * words + w];
+			long twos = sums[Bitboard.TWOS * words + w];
+			long fours = sums[Bitboard.FOURS * words + w];
+			long eights = sums[Bitboard.EIGHTS * words + w];
+			int at = base + (w << 6);
+			for (long set = mine | ones | twos | fours | eights; set != 0; set &= set - 1) {
+				int b = Long.numberOfTrailingZeros(set);
+				int bits = (int) ((ones >>> b) & 1) | (int) ((twos >>> b) & 1) << 1 | (int) ((fours >>> b) & 1) << 2
+						| (int) ((eights >>> b) & 1) << 3 | (int) ((mine >>> b) & 1) << 4;
+				// a flag placed before the first click stays
+				cells[at + b] = (byte) ((cells[at + b] & FLAGGED) | bits);
+			}
+		}
+	}
+
+	/** The vector row writer, if the module is in the boot layer and the writer was built */
+	private static RowWriter vectorWriter() {
+		if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+			return null;
+		}
+		try {
+			return (RowWriter) Class.forName("minesweeper.VectorRows").getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError e) {
+			return null;
+		}
+	}
+
+	private void revealAt(int i) {
+		if (isGameOver() || (cells[i] & (REVEALED | FLAGGED)) != 0) {
+			return;
+		}
+
+		if (!generated) {
+			generateMines(i % width, i / width);
+		}
+
+		if ((cells[i] & MINE) != 0) {
+			markChanged(i);
+			explode(i);
+		} else {
+			revealCell(i);
+			if ((cells[i] & ADJACENT) == 0) {
+				floodFill(i);
+			}
+		}
+	}
+
+	/**
+	 * Reveals the region of empty cells around an empty cell and the numbers
+	 * bordering it. This walks a ring buffer of empty cells breadth first
+	 * instead of recursing, so the depth of the region does not matter and
+	 * the buffer only has to hold the current edge of the fill. The cells are
+	 * read straight from the array rather than through a method shared with
+	 * {@link MappedBoard}, which measured a third slower.
+	 */
+	private void floodFill(int start) {
+		int mask = queue.length - 1;
+		int head = 0, tail = 0;
+		queue[tail++] = start;
+
+		while (head != tail) {
+			int c = queue[head];
+			head = (head + 1) & mask;
+
+			int k = neighbours.kindOf(c);
+			for (int e = neighbours.start(k); e < neighbours.end(k); e++) {
+				int n = c + neighbours.delta(e);
+				if ((cells[n] & (REVEALED | FLAGGED)) == 0) {
+					revealCell(n);
+					if ((cells[n] & ADJACENT) == 0) {
+						queue[tail] = n;
+						tail = (tail + 1) & mask;
+						if (tail == head) {
+							queue = growQueue(queue, head);
+							head = 0;
+							tail = mask + 1;
+							mask = queue.length - 1;
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/** Doubles a full ring buffer that starts at head, moving its contents to the front */
+	static int[] growQueue(int[] queue, int head) {
+		int[] grown = new int[queue.length * 2];
+		System.arraycopy(queue, head, grown, 0, queue.length - head);
+		System.arraycopy(queue, 0, grown, queue.length - head, head);
+		return grown;
+	}
+
+	/** Starts a move, logging the cells it changes for undo if record is set */
+	private void beginMove(boolean record) {
+		numChanged = 0;
+		changedOverflow = false;
+		recording = record && historyDepth > 0;
+		if (recording) {
+			// the move is written over the undone moves, which are dropped if it changes anything
+			redoEnd = logEnd;
+			moveStart = logEnd = (doneMoves == firstMove) ? logStart : moveEnds[doneMoves - 1];
+		}
+	}
+
+	/** Closes the log entry of a move, if it changed anything */
+	private void endMove() {
+		if (!recording) {
+			return;
+		}
+		recording = false;
+		if (logEnd == moveStart) {
+			logEnd = redoEnd;
+			return;
+		}
+		numMoves = doneMoves;
+		if (numMoves == moveEnds.length) {
+			compactMoves();
+		}
+		moveEnds[doneMoves++] = logEnd;
+		numMoves = doneMoves;
+		trimHistory();
+	}
+
+	private void logChange(int entry) {
+		if (!recording) {
+			return;
+		}
+		if (logEnd == log.length) {
+			compactLog();
+			if (logEnd > log.length / 2) {
+				log = Arrays.copyOf(log, log.length * 2);
+			}
+		}
+		log[logEnd++] = entry;
+	}
+
+	/** Forgets the oldest moves, or the newest undone ones, until the history fits its depth */
+	private void trimHistory() {
+		while (numMoves - firstMove > historyDepth) {
+			if (doneMoves > firstMove) {
+				logStart = moveEnds[firstMove++];
+			} else {
+				numMoves--;
+				logEnd = (numMoves == firstMove) ? logStart : moveEnds[numMoves - 1];
+			}
+		}
+		if (numMoves == firstMove) {
+			firstMove = doneMoves = numMoves = 0;
+			logStart = logEnd = 0;
+		}
+	}
+
+	/** Moves the live log entries to the front of the log */
+	private void compactLog() {
+		if (logStart == 0) {
+			return;
+		}
+		System.arraycopy(log, logStart, log, 0, logEnd - logStart);
+		for (int k = firstMove; k < numMoves; k++) {
+			moveEnds[k] -= logStart;
+		}
+		logEnd -= logStart;
+		moveStart -= logStart;
+		redoEnd -= logStart;
+		logStart = 0;
+	}
+
+	/** Moves the kept moves to the front of the move list, growing it if they fill it */
+	private void compactMoves() {
+		if (firstMove == 0) {
+			moveEnds = Arrays.copyOf(moveEnds, moveEnds.length * 2);
+			return;
+		}
+		System.arraycopy(moveEnds, firstMove, moveEnds, 0, numMoves - firstMove);
+		doneMoves -= firstMove;
+		numMoves -= firstMove;
+		firstMove = 0;
+	}
+
+	private void markChanged(int i) {
+		if (numChanged == changed.length) {
+			if (changed.length == MAXTRACKED) {
+				changedOverflow = true;
+				return;
+			}
+			changed = Arrays.copyOf(changed, changed.length * 2);
+		}
+		changed[numChanged++] = i;
+	}
+
+	private void revealCell(int i) {
+		cells[i] |= REVEALED;
+		numRevealed++;
+		hiddenSafe--;
+		markChanged(i);
+		logChange(i);
+		if (hiddenSafe == 0) {
+			status = Status.WON;
+		}
+	}
+
+	private void explode(int i) {
+		logChange(i);
+		explodedCell = i;
+		status = Status.LOST;
+	}
+
+	/** Writes one row of mine bits and bit sliced counts into the cells, keeping the flags */
+	interface RowWriter {
+		int KEEP = FLAGGED;
+
+		void write(byte[] cells, int base, int width, Bitboard mines, int y, long[] sums);
+	}
+
+	/** Splits the rows in half until a band is small enough to count on one thread */
+	@SuppressWarnings("serial")
+	private class MineRows extends RecursiveAction {
+		private final Bitboard mines;
+		private final int from, to;
+		private final RowWriter rows;
+
+		MineRows(Bitboard mines, int from, int to, RowWriter rows) {
+			this.mines = mines;
+			this.from = from;
+			this.to = to;
+			this.rows = rows;
+		}
+
+		@Override
+		protected void compute() {
+			if ((long) (to - from) * width > BANDCELLS && to - from > 1) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new MineRows(mines, from, mid, rows), new MineRows(mines, mid, to, rows));
+			} else {
+				countMines(mines, from, to, rows);
+			}
+		}
+	}
+}
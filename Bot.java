@@ -0,0 +1,123 @@
+package minesweeper;
+
+import java.util.SplittableRandom;
+
+/**
+ * A strategy that plays whole games on a {@link BoardEngine} without a window.
+ * A bot is created for each batch of games and only used by one thread at a
+ * time, so an implementation may keep state between games.
+ */
+public interface Bot {
+
+	/**
+	 * Plays a fresh board until it is won or lost and returns how many of its
+	 * moves were guesses, that is reveals of cells not proven safe
+	 */
+	int play(BoardEngine board, SplittableRandom random);
+
+	/** Creates a bot by short name, or by the name of a class implementing Bot */
+	static Bot create(String name) {
+		switch (name) {
+		case "random":
+			return new RandomBot();
+		case "solver":
+			return new SolverBot();
+		case "probability":
+			return new ProbabilityBot();
+		default:
+			try {
+				return (Bot) Class.forName(name).getDeclaredConstructor().newInstance();
+			} catch (ReflectiveOperationException | ClassCastException e) {
+				throw new IllegalArgumentException("Unknown bot " + name);
+			}
+		}
+	}
+}
+
+/** Opens the centre and then reveals hidden cells at random */
+class RandomBot implements Bot {
+
+	@Override
+	public int play(BoardEngine board, SplittableRandom random) {
+		int w = board.getWidth();
+		int h = board.getHeight();
+		board.reveal(w / 2, h / 2);
+
+		int guesses = 0;
+		while (!board.isGameOver()) {
+			int x = random.nextInt(w);
+			int y = random.nextInt(h);
+			if (!board.isRevealed(x, y)) {
+				board.reveal(x, y);
+				guesses++;
+			}
+		}
+		return guesses;
+	}
+}
+
+/** Reveals every cell the solver proves safe, and guesses at random when it is stuck */
+class SolverBot implements Bot {
+
+	@Override
+	public int play(BoardEngine board, SplittableRandom random) {
+		int w = board.getWidth();
+		Solver solver = new Solver(board);
+		board.reveal(w / 2, board.getHeight() / 2);
+		solver.update();
+
+		int guesses = 0;
+		while (!board.isGameOver()) {
+			int c = solver.nextSafe();
+			if (c < 0) {
+				c = guess(board, solver, random);
+				guesses++;
+			}
+			board.reveal(c % w, c / w);
+			solver.update();
+		}
+		return guesses;
+	}
+
+	/** Picks a hidden cell that is not a proven mine */
+	int guess(BoardEngine board, Solver solver, SplittableRandom random) {
+		int w = board.getWidth();
+		int cells = w * board.getHeight();
+		int start = random.nextInt(cells);
+		for (int i = 0; i < cells; i++) {
+			int c = (start + i) % cells;
+			if (!board.isRevealed(c % w, c / w) && !solver.isKnownMine(c % w, c / w)) {
+				return c;
+			}
+		}
+		return start;
+	}
+}
+
+/** Like the solver bot, but guesses the cell least likely to be a mine */
+class ProbabilityBot extends SolverBot {
+	private static final long BUDGET = 10;
+
+	// kept for the whole game so unchanged components are not counted again
+	private BoardEngine board;
+	private ProbabilityEngine engine;
+
+	@Override
+	int guess(BoardEngine board, Solver solver, SplittableRandom random) {
+		if (this.board != board) {
+			this.board = board;
+			engine = new ProbabilityEngine(board);
+			engine.setTimeBudget(BUDGET);
+		}
+		float[] probabilities = engine.compute();
+
+		int best = -1;
+		for (int c = 0; c < probabilities.length; c++) {
+			if (probabilities[c] != ProbabilityEngine.REVEALED
+					&& (best < 0 || probabilities[c] < probabilities[best])) {
+				best = c;
+			}
+		}
+		return (best < 0) ? super.guess(board, solver, random) : best;
+	}
+}
@@ -0,0 +1,38 @@
+package minesweeper;
+
+class CustomGame implements Difficulty {
+
+	private int width, height, mines;
+
+	CustomGame(int w, int h, int m) {
+		width = w;
+		height = h;
+		mines = m;
+	}
+
+	@Override
+	public int getWidth() {
+		return width;
+	}
+
+	@Override
+	public int getHeight() {
+		return height;
+	}
+
+	@Override
+	public int getNMines() {
+		return mines;
+	}
+
+	@Override
+	public String getName() {
+		return "" + width + "x" + height + ": " + mines;
+	}
+
+	@Override
+	public ScoreDifficulty getDifficulty() {
+		return ScoreDifficulty.CUSTOM;
+	}
+
+}
@@ -0,0 +1,14 @@
+package minesweeper;
+
+interface Difficulty {
+	int getWidth();
+
+	int getHeight();
+
+	int getNMines();
+
+	String getName();
+
+	ScoreDifficulty getDifficulty();
+
+}
@@ -0,0 +1,28 @@
+package minesweeper;
+
+class ExpertGame implements Difficulty {
+	@Override
+	public int getWidth() {
+		return 32;
+	}
+
+	@Override
+	public int getHeight() {
+		return 16;
+	}
+
+	@Override
+	public int getNMines() {
+		return 99;
+	}
+
+	@Override
+	public String getName() {
+		return "Expert";
+	}
+
+	@Override
+	public ScoreDifficulty getDifficulty() {
+		return ScoreDifficulty.EXPERT;
+	}
+}
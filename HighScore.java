@@ -0,0 +1,78 @@
+package minesweeper;
+
+class HighScore implements Comparable<HighScore> {
+	private static final Difficulty[] PRESETS = { new BeginnerGame(), new IntermediateGame(), new ExpertGame() };
+
+	private String name, difficulty;
+	private int time;
+	private long board;
+
+	/** A score on one of the preset difficulties, named by difficulty */
+	HighScore(String name, String difficulty, int score) {
+		this(name, difficulty, score, presetBoard(difficulty));
+	}
+
+	HighScore(String name, String difficulty, int score, long board) {
+		this.name = name;
+		this.difficulty = difficulty;
+		this.time = score;
+		this.board = board;
+	}
+
+	/** Packs a board's width, height and mine count into one key that sorts by all three */
+	static long boardKey(int width, int height, int nMines) {
+		return ((long) width << 48) | ((long) height << 32) | nMines;
+	}
+
+	static long boardKey(Difficulty d) {
+		return boardKey(d.getWidth(), d.getHeight(), d.getNMines());
+	}
+
+	static int keyWidth(long board) {
+		return (int) (board >>> 48);
+	}
+
+	static int keyHeight(long board) {
+		return (int) (board >>> 32) & 0xFFFF;
+	}
+
+	static int keyMines(long board) {
+		return (int) board;
+	}
+
+	/** The key of a preset difficulty's board, or 0 for a board of unknown size */
+	private static long presetBoard(String difficulty) {
+		for (Difficulty d : PRESETS) {
+			if (d.getName().equalsIgnoreCase(difficulty)) {
+				return boardKey(d);
+			}
+		}
+		return 0;
+	}
+
+	String getName() {
+		return name;
+	}
+
+	String getDifficulty() {
+		return difficulty;
+	}
+
+	int getScore() {
+		return time;
+	}
+
+	/** The key of the board the score was set on */
+	long getBoard() {
+		return board;
+	}
+
+	public String toString() {
+		return name + " beat " + difficulty + " in " + time + " seconds.";
+	}
+
+	@Override
+	public int compareTo(HighScore o) {
+		return (this.time < o.time) ? -1 : 1;
+	}
+}
@@ -0,0 +1,205 @@
+package minesweeper;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the best scores of each score file in memory. A file holds one
+ * leaderboard per board size, found by the key from
+ * {@link HighScore#boardKey(int, int, int)} in a sorted map, so looking up or
+ * updating one size costs O(log n) in the number of sizes. A file is read the first
+ * time it is asked for and again only when its modification time or length
+ * shows that something else has written to it, so showing the scores or
+ * checking a new time normally touches nothing but the file's metadata.
+ * <p>
+ * Each file's scores are held in a heap ordered worst first and capped at the
+ * store's capacity, so adding a score costs O(log k) whatever k is. The sorted
+ * list shown to the player is built from the heap only when it has changed.
+ * <p>
+ * Changes show up in memory straight away and are written to disk by a
+ * background thread a moment later, so a slow disk never holds up the caller.
+ * Changes made to a file while its write is waiting are merged into that one
+ * write. {@link #flush()} writes whatever is still waiting and should be
+ * called before the application exits.
+ */
+class HighScoreStore {
+
+	private static final long WRITEDELAY = 250;
+	// stands in for a file's scores when the file is waiting to be deleted
+	private static final List<HighScore> DELETE = Collections.emptyList();
+
+	private final int capacity;
+	private final HashMap<String, Scores> files = new HashMap<String, Scores>();
+
+	// the latest scores of each file waiting to be written, guarded by this
+	private final HashMap<String, List<HighScore>> pending = new HashMap<String, List<HighScore>>();
+	// held while a file is written so a flush and the writer never write together
+	private final Object io = new Object();
+	private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread t = new Thread(r, "high score writer");
+		t.setDaemon(true);
+		return t;
+	});
+
+	HighScoreStore(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Must keep at least one score");
+		}
+		this.capacity = capacity;
+	}
+
+	int getCapacity() {
+		return capacity;
+	}
+
+	/** The best scores on one board size, best first */
+	synchronized List<HighScore> getScores(String fileName, long board) {
+		Board b = scores(fileName).boards.get(board);
+		return (b == null) ? Collections.<HighScore>emptyList() : b.sorted();
+	}
+
+	/** True if a time would make it into the scores of one board size */
+	synchronized boolean qualifies(String fileName, long board, int time) {
+		Board b = scores(fileName).boards.get(board);
+		return b == null || b.worstFirst.size() < capacity || time < b.worstFirst.peek().getScore();
+	}
+
+	/** Adds a score and queues the file to be written if it made the list */
+	synchronized void add(String fileName, HighScore score) {
+		Scores s = scores(fileName);
+		if (s.boards.computeIfAbsent(score.getBoard(), k -> new Board()).offer(score)) {
+			queueWrite(fileName, s.all());
+		}
+	}
+
+	/** Deletes the scores of one board size, and the file once it holds no others */
+	synchronized void clear(String fileName, long board) {
+		Scores s = scores(fileName);
+		if (s.boards.remove(board) != null || s.boards.isEmpty()) {
+			queueWrite(fileName, s.boards.isEmpty() ? DELETE : s.all());
+		}
+	}
+
+	/** Writes every file still waiting to be written */
+	void flush() {
+		String[] files;
+		synchronized (this) {
+			files = pending.keySet().toArray(new String[0]);
+		}
+		for (String fileName : files) {
+			write(fileName);
+		}
+	}
+
+	private void queueWrite(String fileName, List<HighScore> scores) {
+		if (pending.put(fileName, scores) == null) {
+			writer.schedule(() -> write(fileName), WRITEDELAY, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/** Writes the latest scores queued for a file, if any are still waiting */
+	private void write(String fileName) {
+		synchronized (io) {
+			List<HighScore> scores;
+			synchronized (this) {
+				scores = pending.remove(fileName);
+			}
+			if (scores == null) {
+				return;
+			}
+
+			File file = new File(fileName);
+			if (scores == DELETE) {
+				ScoreFile.delete(fileName);
+			} else {
+				ScoreFile.write(fileName, scores);
+			}
+
+			synchronized (this) {
+				Scores s = files.get(fileName);
+				if (s != null && !pending.containsKey(fileName)) {
+					s.stamp(file);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns a file's scores, reading the file if it is new or has changed on
+	 * disk. A file with a write waiting is never read, since memory is newer
+	 */
+	private Scores scores(String fileName) {
+		File file = new File(fileName);
+		Scores s = files.get(fileName);
+		if (s != null && pending.containsKey(fileName)) {
+			return s;
+		}
+		if (s == null || s.modified != file.lastModified() || s.length != file.length()) {
+			s = new Scores();
+			ArrayList<HighScore> scores = new ArrayList<HighScore>();
+			ScoreFile.read(fileName, scores);
+			for (HighScore score : scores) {
+				s.boards.computeIfAbsent(score.getBoard(), k -> new Board()).offer(score);
+			}
+			s.stamp(file);
+			files.put(fileName, s);
+		}
+		return s;
+	}
+
+	/** The scores of one file, by board size */
+	private class Scores {
+		private final TreeMap<Long, Board> boards = new TreeMap<Long, Board>();
+		private long modified, length;
+
+		/** Every score in the order they are written, by board size and then best first */
+		private List<HighScore> all() {
+			ArrayList<HighScore> list = new ArrayList<HighScore>();
+			for (Board b : boards.values()) {
+				list.addAll(b.sorted());
+			}
+			return list;
+		}
+
+		private void stamp(File file) {
+			modified = file.lastModified();
+			length = file.length();
+		}
+	}
+
+	/** The scores of one board size */
+	private class Board {
+		private final PriorityQueue<HighScore> worstFirst = new PriorityQueue<HighScore>(Collections.reverseOrder());
+		private List<HighScore> sorted;
+
+		/** Keeps the score if it is among the best. Returns true if it was kept */
+		private boolean offer(HighScore score) {
+			if (worstFirst.size() == capacity) {
+				if (score.getScore() >= worstFirst.peek().getScore()) {
+					return false;
+				}
+				worstFirst.poll();
+			}
+			worstFirst.add(score);
+			sorted = null;
+			return true;
+		}
+
+		private List<HighScore> sorted() {
+			if (sorted == null) {
+				ArrayList<HighScore> list = new ArrayList<HighScore>(worstFirst);
+				Collections.sort(list);
+				sorted = Collections.unmodifiableList(list);
+			}
+			return sorted;
+		}
+	}
+}
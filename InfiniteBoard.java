@@ -0,0 +1,581 @@
+package minesweeper;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A board with no edges. The plane is split into chunks of 64x64 cells, and
+ * each chunk's mines are drawn from a hash of the board's seed and the chunk's
+ * coordinates, so any chunk can be built on its own, and built again exactly,
+ * the first time a move or the view reaches it. Cells are packed one per byte
+ * as in {@link BoardEngine}; the counts along a chunk's edges are made by
+ * drawing the mines of its neighbours too.
+ * <p>
+ * Only the most recently used chunks are kept, in an access ordered
+ * {@link LinkedHashMap}. A chunk pushed out that the player never touched is
+ * simply dropped. One that holds revealed or flagged cells keeps just those as
+ * two deflated bits per cell, usually a few hundred bytes against the four
+ * kilobytes of a live chunk, and its mines are drawn again when it is next
+ * needed. Moving across the board therefore costs nothing once the view has
+ * passed.
+ * <p>
+ * The packed chunks are never dropped, since they are the game, so they grow
+ * with the ground the player has opened or flagged rather than with the
+ * ground the view has crossed. A packed chunk takes at most the 1024 bytes of
+ * its two bit states, a little more with the map entry, and in play a few
+ * hundred: opening cells all over a 4000x4000 square packed 4096 chunks into
+ * 0.7 to 1.5 megabytes, depending on the density. {@link #getExploredBytes()}
+ * reports what they hold.
+ * <p>
+ * There is no total number of mines, so the board can only be lost. The
+ * first click always opens an empty region: the player's cells are shifted
+ * so that the cell clicked falls on the nearest empty cell of the seeded
+ * board. Should none lie near enough, the mines around the cell clicked are
+ * cleared instead, as {@link BoardEngine} keeps them off the first click.
+ */
+public class InfiniteBoard {
+
+	public static final int CHUNKSIZE = 64;
+	/** Below this many mines per chunk empty regions could grow without end */
+	public static final int MINMINES = CHUNKSIZE * CHUNKSIZE / 8;
+	/** Above this many mines per chunk an empty cell to start on may not exist */
+	public static final int MAXMINES = CHUNKSIZE * CHUNKSIZE / 2;
+
+	private static final int CHUNKBITS = 6;
+	private static final int CHUNKMASK = CHUNKSIZE - 1;
+	private static final int CHUNKCELLS = CHUNKSIZE * CHUNKSIZE;
+	/** The fewest chunks kept: one and every chunk around it */
+	private static final int MINCACHE = 9;
+	/** How far from the first click an empty cell to start on is looked for */
+	private static final int STARTSEARCH = 256;
+
+	private static final int ADJACENT = 0x0F;
+	private static final int MINE = 0x10;
+	private static final int REVEALED = 0x20;
+	private static final int FLAGGED = 0x40;
+
+	// the states a touched chunk is packed into when it is evicted, two bits each
+	private static final int PACKEDREVEALED = 1;
+	private static final int PACKEDFLAGGED = 2;
+
+	/** Past this many cells a move is reported as having changed the whole view */
+	private static final int MAXTRACKED = 1 << 16;
+
+	private final int minesPerChunk;
+	private final long seed;
+	private final int cacheChunks;
+
+	private final LinkedHashMap<Long, Chunk> chunks;
+	// the cells the player has changed in chunks no longer kept, by chunk
+	private final HashMap<Long, byte[]> explored = new HashMap<Long, byte[]>();
+	private long exploredBytes;
+	// the chunk last looked up. Every lookup that misses it goes through the
+	// map and leaves its chunk here, so this is always the newest entry in the
+	// access order, and a hit on it has no order to update. Chunks are only
+	// evicted when another is built, which then becomes the last, so this is
+	// always a live chunk
+	private Chunk lastChunk;
+
+	// where the player's cell (0, 0) lies on the seeded board, set by the first click
+	private int originX, originY;
+	private boolean started;
+	// true if no empty cell was found near the first click, whose neighbourhood
+	// on the seeded board, at (clearedX, clearedY), then has its mines taken away
+	private boolean cleared;
+	private int clearedX, clearedY;
+
+	// work queue for the flood fill and the cells changed by the last move, in
+	// the player's coordinates, kept between calls so that a move does not allocate
+	private long[] queue = new long[64];
+	private int[] changedX = new int[64];
+	private int[] changedY = new int[64];
+	private int numChanged;
+	private boolean changedOverflow;
+
+	private long numRevealed;
+	private int numFlagged;
+	private int explodedX, explodedY;
+	private BoardEngine.Status status = BoardEngine.Status.PLAYING;
+
+	/** A board with the given number of mines in every chunk, keeping up to cacheChunks chunks */
+	public InfiniteBoard(int minesPerChunk, long seed, int cacheChunks) {
+		if (minesPerChunk < MINMINES || minesPerChunk > MAXMINES) {
+			throw new IllegalArgumentException("Mines per chunk must be between " + MINMINES + " and " + MAXMINES);
+		}
+		this.minesPerChunk = minesPerChunk;
+		this.seed = seed;
+		this.cacheChunks = Math.max(MINCACHE, cacheChunks);
+		this.chunks = new LinkedHashMap<Long, Chunk>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, Chunk> eldest) {
+				if (size() <= InfiniteBoard.this.cacheChunks) {
+					return false;
+				}
+				evict(eldest.getKey(), eldest.getValue());
+				return true;
+			}
+		};
+	}
+
+	public int getMinesPerChunk() {
+		return minesPerChunk;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public long getNumRevealed() {
+		return numRevealed;
+	}
+
+	public int getNumFlagged() {
+		return numFlagged;
+	}
+
+	public BoardEngine.Status getStatus() {
+		return status;
+	}
+
+	public boolean isGameOver() {
+		return status != BoardEngine.Status.PLAYING;
+	}
+
+	/** True once the first click has placed the player on the board */
+	public boolean isStarted() {
+		return started;
+	}
+
+	/** The number of chunks held in memory */
+	public int getLoadedChunks() {
+		return chunks.size();
+	}
+
+	/** The number of evicted chunks whose revealed and flagged cells are kept packed */
+	public int getExploredChunks() {
+		return explored.size();
+	}
+
+	/** The bytes held by the packed chunks */
+	public long getExploredBytes() {
+		return exploredBytes;
+	}
+
+	/** The number of cells changed by the last reveal, flag or chord */
+	public int getChangedCount() {
+		return numChanged;
+	}
+
+	public int getChangedX(int i) {
+		return changedX[i];
+	}
+
+	public int getChangedY(int i) {
+		return changedY[i];
+	}
+
+	/**
+	 * True if the last move changed too many cells to list, in which case the
+	 * whole view should be repainted
+	 */
+	public boolean isChangedOverflow() {
+		return changedOverflow;
+	}
+
+	public boolean hasMine(int x, int y) {
+		return (cell(x + originX, y + originY) & MINE) != 0;
+	}
+
+	public boolean isRevealed(int x, int y) {
+		return (cell(x + originX, y + originY) & REVEALED) != 0;
+	}
+
+	public boolean isFlagged(int x, int y) {
+		return (cell(x + originX, y + originY) & FLAGGED) != 0;
+	}
+
+	public int getAdjacentMines(int x, int y) {
+		return cell(x + originX, y + originY) & ADJACENT;
+	}
+
+	/** True if the cell is the mine that ended the game */
+	public boolean isExploded(int x, int y) {
+		return status == BoardEngine.Status.LOST && x + originX == explodedX && y + originY == explodedY;
+	}
+
+	/**
+	 * Left click. The first click places the player so that it opens an empty
+	 * region. Returns the number of cells revealed
+	 */
+	public int reveal(int x, int y) {
+		beginMove();
+		if (!started) {
+			start(x, y);
+		}
+		revealAt(x + originX, y + originY);
+		return numChanged;
+	}
+
+	/**
+	 * Right click. Flags or unflags a hidden cell once the first click has
+	 * placed the player. Returns true if the board changed
+	 */
+	public boolean toggleFlag(int x, int y) {
+		beginMove();
+		if (!started) {
+			return false;
+		}
+		int wx = x + originX;
+		int wy = y + originY;
+		Chunk c = chunk(wx, wy);
+		int i = local(wx, wy);
+		if (isGameOver() || (c.cells[i] & REVEALED) != 0) {
+			return false;
+		}
+		c.cells[i] ^= FLAGGED;
+		c.touched = true;
+		numFlagged += ((c.cells[i] & FLAGGED) != 0) ? 1 : -1;
+		markChanged(wx, wy);
+		return true;
+	}
+
+	/**
+	 * Middle click. If a revealed number has as many flags around it as it has
+	 * adjacent mines every other hidden neighbour is revealed. Returns the
+	 * number of cells revealed
+	 */
+	public int chord(int x, int y) {
+		beginMove();
+		int wx = x + originX;
+		int wy = y + originY;
+		int cell = cell(wx, wy);
+		if (isGameOver() || (cell & REVEALED) == 0) {
+			return 0;
+		}
+
+		int flags = 0;
+		for (int j = -1; j <= 1; j++) {
+			for (int i = -1; i <= 1; i++) {
+				if ((cell(wx + i, wy + j) & FLAGGED) != 0) {
+					flags++;
+				}
+			}
+		}
+		if (flags != (cell & ADJACENT)) {
+			return 0;
+		}
+
+		for (int j = -1; j <= 1; j++) {
+			for (int i = -1; i <= 1; i++) {
+				revealAt(wx + i, wy + j);
+			}
+		}
+		return numChanged;
+	}
+
+	/** Shifts the player's cells so the first click lands on the nearest empty cell */
+	private void start(int x, int y) {
+		started = true;
+		for (int r = 0; r <= STARTSEARCH; r++) {
+			for (int j = -r; j <= r; j++) {
+				for (int i = -r; i <= r; i++) {
+					if (Math.max(Math.abs(i), Math.abs(j)) != r) {
+						continue;
+					}
+					if ((cell(x + i, y + j) & (MINE | ADJACENT)) == 0) {
+						originX = i;
+						originY = j;
+						return;
+					}
+				}
+			}
+		}
+
+		// nothing has been touched before the first click, so the chunks built
+		// so far can simply be built again without the mines around it
+		cleared = true;
+		clearedX = x;
+		clearedY = y;
+		chunks.clear();
+		lastChunk = null;
+	}
+
+	private void revealAt(int x, int y) {
+		Chunk c = chunk(x, y);
+		int i = local(x, y);
+		if (isGameOver() || (c.cells[i] & (REVEALED | FLAGGED)) != 0) {
+			return;
+		}
+
+		if ((c.cells[i] & MINE) != 0) {
+			explodedX = x;
+			explodedY = y;
+			status = BoardEngine.Status.LOST;
+			markChanged(x, y);
+		} else {
+			revealCell(c, i, x, y);
+			if ((c.cells[i] & ADJACENT) == 0) {
+				floodFill(x, y);
+			}
+		}
+	}
+
+	/**
+	 * Reveals the region of empty cells around an empty cell and the numbers
+	 * bordering it, breadth first through a ring buffer of packed coordinates
+	 * as {@link BoardEngine} does. Chunks are looked up cell by cell, so the fill
+	 * carries on across chunk edges and builds chunks as it reaches them.
+	 */
+	private void floodFill(int startX, int startY) {
+		int mask = queue.length - 1;
+		int head = 0, tail = 0;
+		queue[tail++] = pack(startX, startY);
+
+		while (head != tail) {
+			long p = queue[head];
+			head = (head + 1) & mask;
+			int x = (int) (p >> 32);
+			int y = (int) p;
+
+			for (int j = -1; j <= 1; j++) {
+				for (int i = -1; i <= 1; i++) {
+					int nx = x + i;
+					int ny = y + j;
+					Chunk c = chunk(nx, ny);
+					int n = local(nx, ny);
+					if ((c.cells[n] & (REVEALED | FLAGGED)) == 0) {
+						revealCell(c, n, nx, ny);
+						if ((c.cells[n] & ADJACENT) == 0) {
+							queue[tail] = pack(nx, ny);
+							tail = (tail + 1) & mask;
+							if (tail == head) {
+								head = growQueue(head);
+								tail = mask + 1;
+								mask = queue.length - 1;
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/** Doubles the full ring buffer, moving its contents to the front. Returns the new head */
+	private int growQueue(int head) {
+		long[] grown = new long[queue.length * 2];
+		System.arraycopy(queue, head, grown, 0, queue.length - head);
+		System.arraycopy(queue, 0, grown, queue.length - head, head);
+		queue = grown;
+		return 0;
+	}
+
+	private void revealCell(Chunk c, int i, int x, int y) {
+		c.cells[i] |= REVEALED;
+		c.touched = true;
+		numRevealed++;
+		markChanged(x, y);
+	}
+
+	private void beginMove() {
+		numChanged = 0;
+		changedOverflow = false;
+	}
+
+	private void markChanged(int x, int y) {
+		if (numChanged == changedX.length) {
+			if (changedX.length == MAXTRACKED) {
+				changedOverflow = true;
+				return;
+			}
+			changedX = Arrays.copyOf(changedX, changedX.length * 2);
+			changedY = Arrays.copyOf(changedY, changedY.length * 2);
+		}
+		changedX[numChanged] = x - originX;
+		changedY[numChanged] = y - originY;
+		numChanged++;
+	}
+
+	/** The packed cell at a point on the seeded board */
+	private int cell(int x, int y) {
+		return chunk(x, y).cells[local(x, y)];
+	}
+
+	private static int local(int x, int y) {
+		return (y & CHUNKMASK) * CHUNKSIZE + (x & CHUNKMASK);
+	}
+
+	private static long pack(int x, int y) {
+		return ((long) x << 32) | (y & 0xFFFFFFFFL);
+	}
+
+	/** The chunk holding a point on the seeded board, built if it is not kept */
+	private Chunk chunk(int x, int y) {
+		int cx = x >> CHUNKBITS;
+		int cy = y >> CHUNKBITS;
+		if (lastChunk != null && lastChunk.cx == cx && lastChunk.cy == cy) {
+			return lastChunk;
+		}
+		Long key = pack(cx, cy);
+		Chunk c = chunks.get(key);
+		if (c == null) {
+			c = build(cx, cy);
+			chunks.put(key, c);
+		}
+		// the lookup above moved the chunk to the end of the access order
+		lastChunk = c;
+		return c;
+	}
+
+	/** Draws a chunk's mines, counts them around each cell, and puts back what the player did there */
+	private Chunk build(int cx, int cy) {
+		Chunk c = new Chunk(cx, cy);
+
+		// the mines of the chunk and all eight around it, so the edges count across
+		long[][] around = new long[9][];
+		for (int j = -1; j <= 1; j++) {
+			for (int i = -1; i <= 1; i++) {
+				around[(j + 1) * 3 + i + 1] = mines(cx + i, cy + j);
+			}
+		}
+
+		// the chunk with a one cell border, one byte per cell
+		int span = CHUNKSIZE + 2;
+		byte[] grid = new byte[span * span];
+		for (int y = -1; y <= CHUNKSIZE; y++) {
+			for (int x = -1; x <= CHUNKSIZE; x++) {
+				if (mineAt(around, x, y)) {
+					grid[(y + 1) * span + x + 1] = 1;
+				}
+			}
+		}
+		if (cleared) {
+			int ox = cx << CHUNKBITS, oy = cy << CHUNKBITS;
+			for (int y = Math.max(-1, clearedY - 1 - oy); y <= Math.min(CHUNKSIZE, clearedY + 1 - oy); y++) {
+				for (int x = Math.max(-1, clearedX - 1 - ox); x <= Math.min(CHUNKSIZE, clearedX + 1 - ox); x++) {
+					grid[(y + 1) * span + x + 1] = 0;
+				}
+			}
+		}
+
+		for (int y = 0; y < CHUNKSIZE; y++) {
+			for (int x = 0; x < CHUNKSIZE; x++) {
+				int g = (y + 1) * span + x + 1;
+				int count = grid[g - span - 1] + grid[g - span] + grid[g - span + 1] + grid[g - 1] + grid[g + 1]
+						+ grid[g + span - 1] + grid[g + span] + grid[g + span + 1];
+				c.cells[y * CHUNKSIZE + x] = (byte) (count | ((grid[g] != 0) ? MINE : 0));
+			}
+		}
+
+		byte[] packed = explored.remove(pack(cx, cy));
+		if (packed != null) {
+			exploredBytes -= packed.length;
+			unpack(packed, c);
+		}
+		return c;
+	}
+
+	/** Tests a mine from the chunks around, for a cell up to one step outside the middle chunk */
+	private static boolean mineAt(long[][] around, int x, int y) {
+		long[] rows = around[((y + CHUNKSIZE) >> CHUNKBITS) * 3 + ((x + CHUNKSIZE) >> CHUNKBITS)];
+		return ((rows[y & CHUNKMASK] >>> (x & CHUNKMASK)) & 1) != 0;
+	}
+
+	/**
+	 * The mines of a chunk as one bit per cell, one long per row, placed by
+	 * Floyd's sampling as in {@link BoardEngine} from a random generator seeded
+	 * with a hash of the board's seed and the chunk's coordinates
+	 */
+	private long[] mines(int cx, int cy) {
+		long[] rows = new long[CHUNKSIZE];
+		SplittableRandom random = new SplittableRandom(mix(seed ^ mix(pack(cx, cy))));
+		for (int j = CHUNKCELLS - minesPerChunk; j < CHUNKCELLS; j++) {
+			int c = random.nextInt(j + 1);
+			if (((rows[c >> CHUNKBITS] >>> (c & CHUNKMASK)) & 1) != 0) {
+				c = j;
+			}
+			rows[c >> CHUNKBITS] |= 1L << (c & CHUNKMASK);
+		}
+		return rows;
+	}
+
+	/** Spreads the bits of a value, so that nearby chunks get unrelated seeds */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+		z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+		return z ^ (z >>> 33);
+	}
+
+	/** Called as a chunk leaves the cache. Keeps what the player did there, if anything */
+	private void evict(Long key, Chunk c) {
+		if (lastChunk == c) {
+			lastChunk = null;
+		}
+		if (!c.touched) {
+			return;
+		}
+		byte[] states = new byte[CHUNKCELLS / 4];
+		for (int i = 0; i < CHUNKCELLS; i++) {
+			int state = ((c.cells[i] & REVEALED) != 0) ? PACKEDREVEALED
+					: ((c.cells[i] & FLAGGED) != 0) ? PACKEDFLAGGED : 0;
+			states[i >>> 2] |= state << ((i & 3) * 2);
+		}
+
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		try {
+			deflater.setInput(states);
+			deflater.finish();
+			byte[] buffer = new byte[states.length + 64];
+			int length = deflater.deflate(buffer);
+			byte[] packed = Arrays.copyOf(buffer, length);
+			explored.put(key, packed);
+			exploredBytes += packed.length;
+		} finally {
+			deflater.end();
+		}
+	}
+
+	private void unpack(byte[] packed, Chunk c) {
+		byte[] states = new byte[CHUNKCELLS / 4];
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(packed);
+			inflater.inflate(states);
+		} catch (DataFormatException e) {
+			// only ever written by evict, so this can not happen
+			throw new IllegalStateException(e);
+		} finally {
+			inflater.end();
+		}
+
+		for (int i = 0; i < CHUNKCELLS; i++) {
+			int state = (states[i >>> 2] >>> ((i & 3) * 2)) & 3;
+			if (state == PACKEDREVEALED) {
+				c.cells[i] |= REVEALED;
+			} else if (state == PACKEDFLAGGED) {
+				c.cells[i] |= FLAGGED;
+			}
+		}
+		c.touched = true;
+	}
+
+	/** 64x64 cells of the board, packed as in {@link BoardEngine} */
+	private static final class Chunk {
+		final int cx, cy;
+		final byte[] cells = new byte[CHUNKCELLS];
+		// true once the player has revealed or flagged a cell here
+		boolean touched;
+
+		Chunk(int cx, int cy) {
+			this.cx = cx;
+			this.cy = cy;
+		}
+	}
+}
@@ -0,0 +1,33 @@
+package minesweeper;
+
+/**
+ * An endless board. It has no width or height, and its mines are counted in
+ * each chunk of {@link InfiniteBoard#CHUNKSIZE} squared cells, at the density
+ * of an expert game
+ */
+class InfiniteGame implements Difficulty {
+	@Override
+	public int getWidth() {
+		return 0;
+	}
+
+	@Override
+	public int getHeight() {
+		return 0;
+	}
+
+	@Override
+	public int getNMines() {
+		return 792;
+	}
+
+	@Override
+	public String getName() {
+		return "Infinite";
+	}
+
+	@Override
+	public ScoreDifficulty getDifficulty() {
+		return ScoreDifficulty.INFINITE;
+	}
+}
@@ -0,0 +1,28 @@
+package minesweeper;
+
+class IntermediateGame implements Difficulty {
+	@Override
+	public int getWidth() {
+		return 16;
+	}
+
+	@Override
+	public int getHeight() {
+		return 16;
+	}
+
+	@Override
+	public int getNMines() {
+		return 40;
+	}
+
+	@Override
+	public String getName() {
+		return "Intermediate";
+	}
+
+	@Override
+	public ScoreDifficulty getDifficulty() {
+		return ScoreDifficulty.INTERMEDIATE;
+	}
+}
@@ -0,0 +1,572 @@
+package minesweeper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * A board kept in a memory mapped file instead of on the heap, for boards of
+ * hundreds of millions of cells that would otherwise weigh on the garbage
+ * collector. Each cell is one byte laid out as in {@link BoardEngine}, and the
+ * mines are drawn by {@link BoardEngine#drawMines}, so the same seed and first
+ * click place the same mines. The draw takes one bit per cell on the heap
+ * while the mines are placed, and the neighbours are walked with the same
+ * tables as a square {@link BoardEngine}. A header in front of the
+ * cells holds the board's size and counts, written back after every move, so
+ * the file always describes the whole game and an interrupted session is
+ * picked up again with {@link #open(String)} by mapping the file, without
+ * reading it.
+ * <p>
+ * Moves read and write the mapped bytes directly and reuse their work queue,
+ * so a reveal, flag or chord does not allocate once the queue has grown to
+ * the size of the largest fill. Unlike {@link BoardEngine} the flags around a
+ * cell are counted when a chord needs them rather than stored. A file is laid
+ * out as
+ *
+ * <pre>
+ * int magic "MSMB", short version, byte status, byte flags, int width,
+ * int height, int mines, long seed, int revealed, int flagged, int hidden safe,
+ * int exploded cell, int first click, padding to 64 bytes, one byte per cell
+ * </pre>
+ * <p>
+ * Usage: {@code java minesweeper.MappedBoard file [width height mines [seed]]}
+ * creates a board in the file when given its size, and otherwise opens the
+ * board already there. Moves are then read from standard input, one to a line,
+ * as {@code r x y} to reveal, {@code f x y} to flag and {@code c x y} to chord.
+ */
+public class MappedBoard implements AutoCloseable {
+
+	private static final int MAGIC = 0x4D534D42;
+	private static final short VERSION = 1;
+	private static final int HEADER = 64;
+
+	// header offsets
+	private static final int STATUSAT = 6;
+	private static final int FLAGSAT = 7;
+	private static final int WIDTHAT = 8;
+	private static final int HEIGHTAT = 12;
+	private static final int MINESAT = 16;
+	private static final int SEEDAT = 20;
+	private static final int REVEALEDAT = 28;
+	private static final int FLAGGEDAT = 32;
+	private static final int HIDDENSAFEAT = 36;
+	private static final int EXPLODEDAT = 40;
+	private static final int FIRSTCLICKAT = 44;
+
+	// bits of the header's flags byte
+	private static final int GENERATED = 1;
+	// set while a move is being made, so a file left by a crash is recounted when opened
+	private static final int INMOVE = 2;
+
+	private static final int ADJACENT = 0x0F;
+	private static final int MINE = 0x10;
+	private static final int REVEALED = 0x20;
+	private static final int FLAGGED = 0x40;
+
+	/** Past this many cells a move is reported as having changed the whole board */
+	private static final int MAXTRACKED = 1 << 16;
+
+	private final FileChannel channel;
+	private final MappedByteBuffer header;
+	private final MappedByteBuffer cells;
+	private final int width, height, nMines, size;
+	private final long seed;
+	private final Topology.Neighbours neighbours;
+
+	private int[] queue = new int[64];
+	private int[] changed = new int[64];
+	private int numChanged;
+	private boolean changedOverflow;
+
+	private int numRevealed, numFlagged, hiddenSafe;
+	private int explodedCell = -1;
+	private int firstClick = -1;
+	private boolean generated;
+	private BoardEngine.Status status = BoardEngine.Status.PLAYING;
+
+	public static void main(String[] args) {
+		if (args.length != 1 && args.length != 4 && args.length != 5) {
+			System.out.println("Usage: java minesweeper.MappedBoard file [width height mines [seed]]");
+			return;
+		}
+		try {
+			MappedBoard board = (args.length == 1) ? open(args[0])
+					: create(args[0], Integer.parseInt(args[1]), Integer.parseInt(args[2]),
+							Integer.parseInt(args[3]),
+							(args.length == 5) ? Long.parseLong(args[4]) : new SplittableRandom().nextLong());
+			try (board) {
+				System.out.println(board);
+				BufferedReader input = new BufferedReader(new InputStreamReader(System.in));
+				for (String line = input.readLine(); line != null; line = input.readLine()) {
+					try {
+						board.move(line.trim().split("\\s+"));
+						System.out.println(board);
+					} catch (IllegalArgumentException e) {
+						System.out.println(e.getMessage());
+					}
+				}
+			}
+		} catch (IOException | IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+		}
+	}
+
+	/** Makes one move read by {@link #main} */
+	private void move(String[] move) {
+		if (move.length != 3 || move[0].length() != 1) {
+			throw new IllegalArgumentException("Moves are written as r, f or c followed by x and y");
+		}
+		int x = Integer.parseInt(move[1]);
+		int y = Integer.parseInt(move[2]);
+		if (x < 0 || y < 0 || x >= width || y >= height) {
+			throw new IllegalArgumentException(x + "," + y + " is off the board");
+		}
+		switch (move[0].charAt(0)) {
+		case 'r':
+			reveal(x, y);
+			break;
+		case 'f':
+			toggleFlag(x, y);
+			break;
+		case 'c':
+			chord(x, y);
+			break;
+		default:
+			throw new IllegalArgumentException("Moves are written as r, f or c followed by x and y");
+		}
+	}
+
+	@Override
+	public String toString() {
+		return width + "x" + height + " with " + nMines + " mines, seed " + seed + ": " + status + ", "
+				+ numRevealed + " revealed, " + numFlagged + " flagged, " + hiddenSafe + " safe cells hidden";
+	}
+
+	private MappedBoard(FileChannel channel, int width, int height, int nMines, long seed) throws IOException {
+		this.channel = channel;
+		this.width = width;
+		this.height = height;
+		this.nMines = nMines;
+		this.seed = seed;
+		this.size = width * height;
+		this.neighbours = Topology.SQUARE.neighbours(width, height);
+		this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER);
+		this.cells = channel.map(FileChannel.MapMode.READ_WRITE, HEADER, size);
+	}
+
+	/** Creates a new board in the given file, replacing whatever the file held */
+	public static MappedBoard create(String fileName, int width, int height, int nMines, long seed)
+			throws IOException {
+		if (width < 1 || height < 1) {
+			throw new IllegalArgumentException("Board must be at least 1x1");
+		}
+		if ((long) width * height > Integer.MAX_VALUE - HEADER) {
+			throw new IllegalArgumentException("Board is too large");
+		}
+		if (nMines < 0 || nMines >= width * height) {
+			throw new IllegalArgumentException("Mines must be between 0 and " + (width * height - 1));
+		}
+
+		FileChannel channel = new RandomAccessFile(fileName, "rw").getChannel();
+		try {
+			// a file cut back to nothing reads as zeros when it grows, so every cell starts empty
+			channel.truncate(0);
+			MappedBoard board = new MappedBoard(channel, width, height, nMines, seed);
+			board.hiddenSafe = width * height - nMines;
+			board.header.putInt(0, MAGIC);
+			board.header.putShort(4, VERSION);
+			board.header.putInt(WIDTHAT, width);
+			board.header.putInt(HEIGHTAT, height);
+			board.header.putInt(MINESAT, nMines);
+			board.header.putLong(SEEDAT, seed);
+			board.writeCounts();
+			return board;
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/** Maps a board left in a file by an earlier session */
+	public static MappedBoard open(String fileName) throws IOException {
+		FileChannel channel = new RandomAccessFile(fileName, "rw").getChannel();
+		try {
+			if (channel.size() < HEADER) {
+				throw new IOException(fileName + " is not a board");
+			}
+			MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER);
+			if (header.getInt(0) != MAGIC) {
+				throw new IOException(fileName + " is not a board");
+			}
+			if (header.getShort(4) > VERSION) {
+				throw new IOException(fileName + " was written by a newer version");
+			}
+			int width = header.getInt(WIDTHAT);
+			int height = header.getInt(HEIGHTAT);
+			int nMines = header.getInt(MINESAT);
+			long size = (long) width * height;
+			int status = header.get(STATUSAT);
+			if (width < 1 || height < 1 || size > Integer.MAX_VALUE - HEADER || channel.size() < HEADER + size
+					|| nMines < 0 || nMines >= size || status < 0 || status >= BoardEngine.Status.values().length
+					|| header.getInt(FIRSTCLICKAT) < -1 || header.getInt(FIRSTCLICKAT) >= size
+					|| header.getInt(EXPLODEDAT) < -1 || header.getInt(EXPLODEDAT) >= size) {
+				throw new IOException(fileName + " is damaged");
+			}
+
+			MappedBoard board = new MappedBoard(channel, width, height, nMines, header.getLong(SEEDAT));
+			board.readCounts();
+			return board;
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/** Writes every change to the disk, which the system otherwise does in its own time */
+	public void force() {
+		header.force();
+		cells.force();
+	}
+
+	/**
+	 * Forces the board to disk and closes the file. The mapping itself is only
+	 * released once the board is garbage collected
+	 */
+	@Override
+	public void close() throws IOException {
+		force();
+		channel.close();
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getNMines() {
+		return nMines;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public int getNumRevealed() {
+		return numRevealed;
+	}
+
+	public int getNumFlagged() {
+		return numFlagged;
+	}
+
+	/** The number of safe cells the player still has to reveal */
+	public int getHiddenSafe() {
+		return hiddenSafe;
+	}
+
+	public BoardEngine.Status getStatus() {
+		return status;
+	}
+
+	public boolean isGenerated() {
+		return generated;
+	}
+
+	public boolean isGameOver() {
+		return status != BoardEngine.Status.PLAYING;
+	}
+
+	/** The index of the cell the mines were placed around, or -1 */
+	public int getFirstClick() {
+		return firstClick;
+	}
+
+	/** The index of the mine that ended the game, or -1 */
+	public int getExplodedCell() {
+		return explodedCell;
+	}
+
+	public int index(int x, int y) {
+		return y * width + x;
+	}
+
+	/** The number of cells changed by the last reveal, flag or chord */
+	public int getChangedCount() {
+		return numChanged;
+	}
+
+	/** The index of the i'th cell changed by the last reveal, flag or chord */
+	public int getChangedCell(int i) {
+		return changed[i];
+	}
+
+	/**
+	 * True if the last move changed too many cells to list, in which case the
+	 * whole board should be repainted
+	 */
+	public boolean isChangedOverflow() {
+		return changedOverflow;
+	}
+
+	public boolean hasMine(int x, int y) {
+		return (cells.get(index(x, y)) & MINE) != 0;
+	}
+
+	public boolean isRevealed(int x, int y) {
+		return (cells.get(index(x, y)) & REVEALED) != 0;
+	}
+
+	public boolean isFlagged(int x, int y) {
+		return (cells.get(index(x, y)) & FLAGGED) != 0;
+	}
+
+	public int getAdjacentMines(int x, int y) {
+		return cells.get(index(x, y)) & ADJACENT;
+	}
+
+	/**
+	 * Places the mines as if the given cell had been clicked first, without
+	 * revealing anything. Does nothing if the mines are already placed
+	 */
+	public void generate(int x, int y) {
+		if (!generated) {
+			beginMove();
+			generateMines(x, y);
+			endMove();
+		}
+	}
+
+	/**
+	 * Left click. Places the mines on the first call. Returns the number of
+	 * cells revealed, which can be read back with {@link #getChangedCell(int)}
+	 */
+	public int reveal(int x, int y) {
+		beginMove();
+		revealAt(index(x, y));
+		endMove();
+		return numChanged;
+	}
+
+	/** Right click. Flags or unflags a hidden cell. Returns true if the board changed */
+	public boolean toggleFlag(int x, int y) {
+		int i = index(x, y);
+		int cell = cells.get(i);
+		if (isGameOver() || (cell & REVEALED) != 0 || ((cell & FLAGGED) == 0 && numFlagged == nMines)) {
+			numChanged = 0;
+			changedOverflow = false;
+			return false;
+		}
+		beginMove();
+		cells.put(i, (byte) (cell ^ FLAGGED));
+		numFlagged += ((cell & FLAGGED) == 0) ? 1 : -1;
+		markChanged(i);
+		endMove();
+		return true;
+	}
+
+	/**
+	 * Middle click. If a revealed number has as many flags around it as it has
+	 * adjacent mines every other hidden neighbour is revealed. Returns the
+	 * number of cells revealed
+	 */
+	public int chord(int x, int y) {
+		numChanged = 0;
+		changedOverflow = false;
+		int i = index(x, y);
+		int cell = cells.get(i);
+		if (isGameOver() || (cell & REVEALED) == 0) {
+			return 0;
+		}
+
+		int k = neighbours.kind(x, y);
+		int flags = 0;
+		for (int e = neighbours.start(k); e < neighbours.end(k); e++) {
+			if ((cells.get(i + neighbours.delta(e)) & FLAGGED) != 0) {
+				flags++;
+			}
+		}
+		if (flags != (cell & ADJACENT)) {
+			return 0;
+		}
+
+		beginMove();
+		for (int e = neighbours.start(k); e < neighbours.end(k); e++) {
+			revealAt(i + neighbours.delta(e));
+		}
+		endMove();
+		return numChanged;
+	}
+
+	/** Places the mines that {@link BoardEngine} draws, so the same seed gives the same board */
+	private void generateMines(int fx, int fy) {
+		int first = index(fx, fy);
+		Bitboard mines = BoardEngine.drawMines(width, height, nMines, seed, neighbours, first);
+		for (int c = mines.nextSetBit(0); c >= 0; c = mines.nextSetBit(c + 1)) {
+			cells.put(c, (byte) (cells.get(c) | MINE));
+			int k = neighbours.kindOf(c);
+			for (int e = neighbours.start(k); e < neighbours.end(k); e++) {
+				int n = c + neighbours.delta(e);
+				cells.put(n, (byte) (cells.get(n) + 1));
+			}
+		}
+
+		firstClick = first;
+		generated = true;
+		// written before the first cell is revealed, so a crash during its fill still finds the mines placed
+		header.putInt(FIRSTCLICKAT, firstClick);
+		header.put(FLAGSAT, (byte) (GENERATED | INMOVE));
+	}
+
+	private void revealAt(int i) {
+		if (isGameOver() || (cells.get(i) & (REVEALED | FLAGGED)) != 0) {
+			return;
+		}
+
+		if (!generated) {
+			generateMines(i % width, i / width);
+		}
+
+		int cell = cells.get(i);
+		if ((cell & MINE) != 0) {
+			markChanged(i);
+			explodedCell = i;
+			status = BoardEngine.Status.LOST;
+		} else {
+			revealCell(i, cell);
+			if ((cell & ADJACENT) == 0) {
+				floodFill(i);
+			}
+		}
+	}
+
+	/** The breadth first fill of {@link BoardEngine}, over the mapped cells */
+	private void floodFill(int start) {
+		int mask = queue.length - 1;
+		int head = 0, tail = 0;
+		queue[tail++] = start;
+
+		while (head != tail) {
+			int c = queue[head];
+			head = (head + 1) & mask;
+
+			int k = neighbours.kindOf(c);
+			for (int e = neighbours.start(k); e < neighbours.end(k); e++) {
+				int n = c + neighbours.delta(e);
+				int cell = cells.get(n);
+				if ((cell & (REVEALED | FLAGGED)) == 0) {
+					revealCell(n, cell);
+					if ((cell & ADJACENT) == 0) {
+						queue[tail] = n;
+						tail = (tail + 1) & mask;
+						if (tail == head) {
+							queue = BoardEngine.growQueue(queue, head);
+							head = 0;
+							tail = mask + 1;
+							mask = queue.length - 1;
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private void revealCell(int i, int cell) {
+		cells.put(i, (byte) (cell | REVEALED));
+		numRevealed++;
+		hiddenSafe--;
+		markChanged(i);
+		if (hiddenSafe == 0) {
+			status = BoardEngine.Status.WON;
+		}
+	}
+
+	/** Marks the file as mid move until {@link #endMove()} writes the counts back */
+	private void beginMove() {
+		numChanged = 0;
+		changedOverflow = false;
+		header.put(FLAGSAT, (byte) (header.get(FLAGSAT) | INMOVE));
+	}
+
+	private void endMove() {
+		writeCounts();
+	}
+
+	private void markChanged(int i) {
+		if (numChanged == changed.length) {
+			if (changed.length == MAXTRACKED) {
+				changedOverflow = true;
+				return;
+			}
+			changed = Arrays.copyOf(changed, changed.length * 2);
+		}
+		changed[numChanged++] = i;
+	}
+
+	private void writeCounts() {
+		header.putInt(REVEALEDAT, numRevealed);
+		header.putInt(FLAGGEDAT, numFlagged);
+		header.putInt(HIDDENSAFEAT, hiddenSafe);
+		header.putInt(EXPLODEDAT, explodedCell);
+		header.putInt(FIRSTCLICKAT, firstClick);
+		header.put(STATUSAT, (byte) status.ordinal());
+		header.put(FLAGSAT, (byte) (generated ? GENERATED : 0));
+	}
+
+	/**
+	 * Reads the counts back from the header, or counts the cells again if the
+	 * last session stopped in the middle of a move
+	 */
+	private void readCounts() {
+		int flags = header.get(FLAGSAT);
+		generated = (flags & GENERATED) != 0;
+		firstClick = header.getInt(FIRSTCLICKAT);
+		explodedCell = header.getInt(EXPLODEDAT);
+		if ((flags & INMOVE) == 0) {
+			numRevealed = header.getInt(REVEALEDAT);
+			numFlagged = header.getInt(FLAGGEDAT);
+			hiddenSafe = header.getInt(HIDDENSAFEAT);
+			status = BoardEngine.Status.values()[header.get(STATUSAT)];
+			return;
+		}
+
+		// the cells are the record of what happened; the counts follow from them
+		int mines = 0;
+		for (int i = 0; i < size; i++) {
+			int cell = cells.get(i);
+			if ((cell & MINE) != 0) {
+				mines++;
+			}
+			if ((cell & REVEALED) != 0) {
+				numRevealed++;
+			}
+			if ((cell & FLAGGED) != 0) {
+				numFlagged++;
+			}
+		}
+		if (mines == nMines && firstClick >= 0) {
+			// the mines were all placed, perhaps by a first click whose fill was cut short
+			generated = true;
+		} else {
+			// stopped while placing the mines, before the first click was written and so
+			// before anything was revealed, so start again, keeping any flags put down before it
+			for (int i = 0; i < size; i++) {
+				cells.put(i, (byte) (cells.get(i) & FLAGGED));
+			}
+			numRevealed = 0;
+			explodedCell = firstClick = -1;
+			generated = false;
+		}
+		hiddenSafe = size - nMines - numRevealed;
+		status = (explodedCell >= 0) ? BoardEngine.Status.LOST
+				: (hiddenSafe == 0) ? BoardEngine.Status.WON : BoardEngine.Status.PLAYING;
+		writeCounts();
+	}
+}
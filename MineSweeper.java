@@ -1,23 +1,27 @@
 package minesweeper;
 
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
 
 import javafx.animation.Animation;
+import javafx.animation.AnimationTimer;
 import javafx.animation.KeyFrame;
 import javafx.animation.Timeline;
+import javafx.concurrent.Task;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
+import javafx.scene.control.CheckMenuItem;
 import javafx.scene.control.Label;
 import javafx.scene.control.Menu;
 import javafx.scene.control.MenuBar;
@@ -25,15 +29,15 @@ import javafx.scene.control.MenuItem;
 import javafx.scene.control.RadioButton;
 import javafx.scene.control.TextField;
 import javafx.scene.control.ToggleGroup;
-import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
+import javafx.scene.input.KeyCombination;
 import javafx.scene.input.MouseButton;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.BorderPane;
-import javafx.scene.layout.GridPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Pane;
 import javafx.scene.layout.VBox;
+import javafx.scene.paint.Color;
 import javafx.stage.Screen;
 import javafx.stage.Stage;
 import javafx.stage.StageStyle;
@@ -50,15 +54,39 @@ public class MineSweeper extends VBox {
 	private BorderPane topMenu;
 
 	private HighScorePane highScorePane;
-
-	private enum scoreDifficulties {
-		BEGINNER, INTERMEDIATE, EXPERT, CUSTOM
-	};
+	private static final int NUMBEROFSCORES = 3;
+	private final HighScoreStore scores = new HighScoreStore(Integer.getInteger("minesweeper.highscores", NUMBEROFSCORES));
+	// the number of moves that can be undone
+	private static final int UNDODEPTH = 1000;
+	// the chunks of an infinite board kept in memory, about 4 KB each
+	private static final int INFINITECHUNKS = 256;
+	private final int undoDepth = Integer.getInteger("minesweeper.undo", UNDODEPTH);
+	// for reporting the time to the first frame, when started with -Dminesweeper.startup=true
+	private final boolean reportStartup = Boolean.getBoolean("minesweeper.startup");
+	private long constructedNanos, shownNanos;
 
 	private Face face;
 	private Counter clock;
 	private Pane fieldPane;
-	private Mine mines[][];
+	private MineField mineField;
+	private BoardEngine board;
+	// how the cells of new boards are connected, and the menu items choosing it
+	private Topology topology = Topology.SQUARE;
+	private CheckMenuItem[] shapeItems;
+	// the board of an infinite game, which replaces board and mineField until another game starts
+	private InfiniteBoard infinite;
+	// every input of the current game, saved when it ends
+	private Replay replay;
+	// built the first time a hint or auto flag asks for it, since it keeps a
+	// byte a cell and most games never use it
+	private Solver solver;
+	// built when the heatmap is turned on and dropped when it is turned off,
+	// since it keeps 17 bytes a cell
+	private ProbabilityEngine probabilities;
+	private boolean showProbabilities;
+	// set while the heatmap is worked out off the FX thread, and when a move
+	// comes in meanwhile, so that it is worked out again once that finishes
+	private boolean computingProbabilities, probabilitiesStale;
 	private Counter flagCounter;
 
 	private static final int BEVELLAYERS = 4;
@@ -67,80 +95,126 @@ public class MineSweeper extends VBox {
 	private static final String CSSFILE = "minesweeper.css";
 	private static final int PAD = 5;
 	private static final Insets PADDING = new Insets(PAD, PAD, PAD, PAD);
+	private static final String SCOREFOLDER = "scores";
+	private static final String REPLAYFOLDER = "replays";
+	private static final String SAVEFOLDER = "saves";
+	private static final String SAVEFILE = "saves/resume.mss";
 	private static final String BEGINNERFILE = "scores/beginner.swp";
 	private static final String INTERMEDIATEFILE = "scores/intermediate.swp";
 	private static final String EXPERTFILE = "scores/expert.swp";
 	private static final String CUSTOMFILE = "scores/custom.swp";
 
-	private int numRevealed;
-	private boolean gameOver, firstClick;
+	private boolean gameOver;
+	// when set, the first click generates a board that needs no guessing,
+	// unless the game was started from a given seed
+	private boolean noGuess, fixedSeed;
+	// set when the game was restored from a save, which leaves it without a full replay
+	private boolean resumed;
+	// set once a move has been undone, after which the game can not set a high score
+	private boolean undone;
 
 	private Difficulty state;
+	// the board size shown by the custom high scores
+	private Difficulty lastCustom;
 	private final ExpertGame EXPERT = new ExpertGame();
 	private final BeginnerGame BEGINNER = new BeginnerGame();
 	private final IntermediateGame INTERMEDIATE = new IntermediateGame();
+	private final InfiniteGame INFINITE = new InfiniteGame();
 
 	private Timeline timeline;
 
-	private final static Image DEAD = new Image("file:res/dead.png");
-	private final static Image SMILE = new Image("file:res/smile.png");
-	private final static Image OFACE = new Image("file:res/ohface.png");
-	private final static Image SUNGLASSES = new Image("file:res/sunglasses.png");
-	private final static Image SMILEPRESSED = new Image("file:res/smilepressed.png");
-	private final static Image D0 = new Image("file:res/0.png");
-	private final static Image D1 = new Image("file:res/1.png");
-	private final static Image D2 = new Image("file:res/2.png");
-	private final static Image D3 = new Image("file:res/3.png");
-	private final static Image D4 = new Image("file:res/4.png");
-	private final static Image D5 = new Image("file:res/5.png");
-	private final static Image D6 = new Image("file:res/6.png");
-	private final static Image D7 = new Image("file:res/7.png");
-	private final static Image D8 = new Image("file:res/8.png");
-	private final static Image D9 = new Image("file:res/9.png");
-	private final static Image M1 = new Image("file:res/1tile.png");
-	private final static Image M2 = new Image("file:res/2tile.png");
-	private final static Image M3 = new Image("file:res/3tile.png");
-	private final static Image M4 = new Image("file:res/4tile.png");
-	private final static Image M5 = new Image("file:res/5tile.png");
-	private final static Image M6 = new Image("file:res/6tile.png");
-	private final static Image M7 = new Image("file:res/7tile.png");
-	private final static Image M8 = new Image("file:res/8tile.png");
-	private final static Image FLAG = new Image("file:res/flag.png");
-	private final static Image MINE = new Image("file:res/mine.png");
-	private final static Image XMINE = new Image("file:res/xmine.png");
-	private final static Image REDMINE = new Image("file:res/redmine.png");
-	private final static Image EMPTYSPACE = new Image("file:res/empty.png");
-	private final static Image EMPTYPRESSED = new Image("file:res/emptyPressed.png");
-
-	private final static Image[] DIGITS = { D0, D1, D2, D3, D4, D5, D6, D7, D8, D9 };
-	private final static Image[] MINES = { EMPTYPRESSED, M1, M2, M3, M4, M5, M6, M7, M8 };
+	private final static Sprite[] DIGITS = { Sprite.D0, Sprite.D1, Sprite.D2, Sprite.D3, Sprite.D4, Sprite.D5,
+			Sprite.D6, Sprite.D7, Sprite.D8, Sprite.D9 };
+	private final static Sprite[] MINES = { Sprite.EMPTYPRESSED, Sprite.M1, Sprite.M2, Sprite.M3, Sprite.M4,
+			Sprite.M5, Sprite.M6, Sprite.M7, Sprite.M8 };
 
 	public MineSweeper(@SuppressWarnings("exports") Stage stage) {
 		this.stage = stage;
 		setup();
-		newGame(BEGINNER);
+		if (!resumeGame()) {
+			newGame(BEGINNER);
+		}
+	}
+
+	/**
+	 * The custom difficulty window, built the first time it is needed since
+	 * most sessions never open it
+	 */
+	private Stage customDifficulty() {
+		if (customDifficulty == null) {
+			customDifficulty = new Stage();
+			customDifficulty.setResizable(false);
+
+			MineSweeperDifficultyMenu difficultyMenu = new MineSweeperDifficultyMenu();
+
+			customDifficulty.setScene(new Scene(bevelPane(difficultyMenu, OUTERBEVEL, BEVELLAYERS)));
+			customDifficulty.getScene().getStylesheets().add(getClass().getResource(CSSFILE).toExternalForm());
+			customDifficulty.initStyle(StageStyle.UTILITY);
+
+			customDifficulty.setOnShowing(e -> {
+				difficultyMenu.resetTextFields();
+			});
+		}
+		return customDifficulty;
+	}
+
+	private void hideCustomDifficulty() {
+		if (customDifficulty != null) {
+			customDifficulty.hide();
+		}
+	}
+
+	/** The high score window, built the first time scores are shown or a game is won */
+	private HighScorePane highScorePane() {
+		if (highScorePane == null) {
+			setupHighScoreScreen();
+		}
+		return highScorePane;
 	}
 
-	private static Image getDigitImage(char n) {
+	/**
+	 * Reports how long after the JVM started the first frame was drawn, if
+	 * asked to, then reads the current difficulty's scores on a background
+	 * thread so the first win does not wait on the disk
+	 */
+	private void firstFrameDrawn() {
+		if (reportStartup) {
+			System.out.println("First frame drawn " + ManagementFactory.getRuntimeMXBean().getUptime()
+					+ " ms after start, " + (shownNanos - constructedNanos) / 1_000_000 + " ms of it building the window");
+		}
+
+		String fileName = scoreFileName(state.getDifficulty());
+		long board = HighScore.boardKey(state);
+		Thread warm = new Thread(() -> {
+			new File(SCOREFOLDER).mkdir();
+			scores.getScores(fileName, board);
+		}, "high score warm up");
+		warm.setDaemon(true);
+		warm.start();
+	}
+
+	private static Sprite getDigitImage(char n) {
 		return getDigitImage(Integer.parseInt("" + n));
 	}
 
-	private static Image getDigitImage(int n) {
+	private static Sprite getDigitImage(int n) {
 		return DIGITS[n];
 	}
 
-	private static Image getMineImage(int n) {
+	private static Sprite getMineImage(int n) {
 		return MINES[n];
 	}
 
 	private void setup() {
 
-		setupHighScoreScreen();
+		constructedNanos = System.nanoTime();
 
-		stage.getIcons().add(SUNGLASSES);
+		stage.getIcons().add(SpriteAtlas.image(Sprite.SUNGLASSES));
 		stage.setResizable(false);
 
 		stage.setOnHiding(e -> {
+			saveGame();
+			scores.flush();
 			System.exit(0);
 		});
 
@@ -151,19 +225,16 @@ public class MineSweeper extends VBox {
 		stage.setOnShown(e -> {
 			stage.setX(((Screen.getScreens().get(0).getBounds().getMaxX()) / 2) - ((stage.getWidth()) / 2));
 			stage.setY(((Screen.getScreens().get(0).getBounds().getMaxY()) / 2) - ((stage.getHeight()) / 2));
-		});
 
-		customDifficulty = new Stage();
-		customDifficulty.setResizable(false);
-
-		MineSweeperDifficultyMenu difficultyMenu = new MineSweeperDifficultyMenu();
-
-		customDifficulty.setScene(new Scene(bevelPane(difficultyMenu, OUTERBEVEL, BEVELLAYERS)));
-		customDifficulty.getScene().getStylesheets().add(getClass().getResource(CSSFILE).toExternalForm());
-		customDifficulty.initStyle(StageStyle.UTILITY);
-
-		customDifficulty.setOnShowing(e -> {
-			difficultyMenu.resetTextFields();
+			// the first pulse after the window is shown is the one that draws it
+			shownNanos = System.nanoTime();
+			new AnimationTimer() {
+				@Override
+				public void handle(long now) {
+					stop();
+					firstFrameDrawn();
+				}
+			}.start();
 		});
 
 		timeline = new Timeline(new KeyFrame(Duration.millis(1000), e -> {
@@ -205,14 +276,14 @@ public class MineSweeper extends VBox {
 	}
 
 	private class HighScorePane extends Pane {
-		private ArrayList<HighScore> gameScores = new ArrayList<HighScore>(0);
-		private static final int NUMBEROFSCORES = 3;
 		private String fileName;
+		private long board;
+		private String boardName;
 		VBox labels;
 
 		HighScorePane() {
 
-			File file = new File("scores");
+			File file = new File(SCOREFOLDER);
 			if (file.mkdir()) {
 				System.out.println("scores folder created");
 			} else {
@@ -238,9 +309,11 @@ public class MineSweeper extends VBox {
 
 		}
 
-		private void getScores(scoreDifficulties diff) {
+		private void getScores(Difficulty d) {
 
-			fileNameFromDifficulty(diff);
+			fileNameFromDifficulty(d.getDifficulty());
+			board = HighScore.boardKey(d);
+			boardName = d.getName();
 
 			refreshPane();
 		}
@@ -248,94 +321,57 @@ public class MineSweeper extends VBox {
 		private void refreshPane() {
 			labels.getChildren().clear();
 
-			getScoresFromFile();
-
-			Collections.sort(gameScores);
+			if (fileName.equals(CUSTOMFILE)) {
+				labels.getChildren().add(new Label("Custom " + boardName));
+			}
 
-			int max = (NUMBEROFSCORES < gameScores.size()) ? NUMBEROFSCORES : gameScores.size();
+			List<HighScore> gameScores = scores.getScores(fileName, board);
 
 			if (gameScores.size() > 0) {
-				for (int i = 0; i < max; i++) {
-					labels.getChildren().add(new Label(gameScores.get(i).toString()));
+				for (HighScore score : gameScores) {
+					labels.getChildren().add(new Label(score.toString()));
 				}
 			} else {
 				labels.getChildren().add(new Label("There are no" + "" + " high scores yet!"));
 			}
 		}
 
-		private void fileNameFromDifficulty(scoreDifficulties diff) {
-			switch (diff) {
-			case BEGINNER:
-				fileName = BEGINNERFILE;
-				break;
-			case INTERMEDIATE:
-				fileName = INTERMEDIATEFILE;
-				break;
-			case EXPERT:
-				fileName = EXPERTFILE;
-				break;
-			case CUSTOM:
-				fileName = CUSTOMFILE;
-				break;
-			default:
-				fileName = BEGINNERFILE;
-			}
+		private void fileNameFromDifficulty(ScoreDifficulty diff) {
+			fileName = scoreFileName(diff);
 		}
 
-		private void writeScoresToFile(scoreDifficulties diff, HighScore hs) {
+		private void writeScoresToFile(ScoreDifficulty diff, HighScore hs) {
 			fileNameFromDifficulty(diff);
 
-			getScoresFromFile();
-
-			gameScores.add(hs);
-			Collections.sort(gameScores);
-
-			int max = (NUMBEROFSCORES < gameScores.size()) ? NUMBEROFSCORES : gameScores.size();
-
-			try (DataOutputStream output = new DataOutputStream(new FileOutputStream(fileName));) {
-
-				for (int i = 0; i < max; i++) {
-					output.writeUTF(gameScores.get(i).getName());
-					output.writeUTF(gameScores.get(i).getDifficulty());
-					output.writeInt(gameScores.get(i).getScore());
-				}
-			} catch (IOException e) {
-				System.out.println(e.getMessage());
-			}
+			scores.add(fileName, hs);
 		}
 
-		private void getScoresFromFile() {
-
-			File file = new File(fileName);
-			if (!file.exists()) {
-				try {
-					file.createNewFile();
-				} catch (IOException e1) {
-					e1.printStackTrace();
-				}
-			}
-
-			gameScores.clear();
-			try (DataInputStream input = new DataInputStream(new FileInputStream(file));) {
-				while (input.available() > 0) {
-					gameScores.add(new HighScore(input.readUTF(), input.readUTF(), input.readInt()));
-				}
-			} catch (IOException e) {
-				System.out.println(e);
-			}
+		/** True if the time would make it onto the current board's scores */
+		private boolean isHighScore(int time) {
+			return scores.qualifies(fileName, board, time);
 		}
 
 		private void deleteFile() {
-			// fileNameFromDifficulty(diff);
-
-			File file = new File(fileName);
-			if (file.exists()) {
-				file.delete();
-			}
+			scores.clear(fileName, board);
 		}
 
 	}
 
+	private static String scoreFileName(ScoreDifficulty diff) {
+		switch (diff) {
+		case BEGINNER:
+			return BEGINNERFILE;
+		case INTERMEDIATE:
+			return INTERMEDIATEFILE;
+		case EXPERT:
+			return EXPERTFILE;
+		case CUSTOM:
+			return CUSTOMFILE;
+		default:
+			return BEGINNERFILE;
+		}
+	}
+
 	private void setupPlayerNameStage() {
 		getPlayerNameWindow = new Stage();
 		getPlayerNameWindow.setScene(new Scene(new EnterHighScore(clock.getValue())));
@@ -370,9 +406,10 @@ public class MineSweeper extends VBox {
 					InputHandler.noWhiteSpaceOrThrow(input);
 					InputHandler.isAlphabeticalOrThrow(input);
 
-					HighScore hs = new HighScore(name.getText(), state.getDifficulty().toString().toLowerCase(), score);
-					highScorePane.writeScoresToFile(state.getDifficulty(), hs);
-					openHighScoreWindow(state.getDifficulty());
+					HighScore hs = new HighScore(name.getText(), state.getDifficulty().toString().toLowerCase(), score,
+							HighScore.boardKey(state));
+					highScorePane().writeScoresToFile(state.getDifficulty(), hs);
+					openHighScoreWindow(state);
 					getPlayerNameWindow.close();
 
 				} catch (SelectionException ex) {
@@ -385,8 +422,8 @@ public class MineSweeper extends VBox {
 		}
 	}
 
-	private void openHighScoreWindow(scoreDifficulties d) {
-		highScorePane.getScores(d);
+	private void openHighScoreWindow(Difficulty d) {
+		highScorePane().getScores(d);
 		showHighScores.show();
 		showHighScores.sizeToScene();
 	}
@@ -401,7 +438,7 @@ public class MineSweeper extends VBox {
 			MenuItem d0 = new MenuItem();
 			d0.setText("Beginner Difficulty");
 			d0.setOnAction(e -> {
-				customDifficulty.hide();
+				hideCustomDifficulty();
 				newGame(BEGINNER);
 			});
 			d0.getStyleClass().add(INNERBEVEL);
@@ -409,7 +446,7 @@ public class MineSweeper extends VBox {
 			MenuItem d1 = new MenuItem();
 			d1.setText("Intermediate Difficulty");
 			d1.setOnAction(e -> {
-				customDifficulty.hide();
+				hideCustomDifficulty();
 				newGame(INTERMEDIATE);
 			});
 			d1.getStyleClass().add(INNERBEVEL);
@@ -417,19 +454,78 @@ public class MineSweeper extends VBox {
 			MenuItem d2 = new MenuItem();
 			d2.setText("Expert Difficulty");
 			d2.setOnAction(e -> {
-				customDifficulty.hide();
+				hideCustomDifficulty();
 				newGame(EXPERT);
 			});
 			d2.getStyleClass().add(INNERBEVEL);
 
+			MenuItem i0 = new MenuItem();
+			i0.setText("Infinite Board");
+			i0.setOnAction(e -> {
+				hideCustomDifficulty();
+				newGame(INFINITE);
+			});
+			i0.getStyleClass().add(INNERBEVEL);
+
 			MenuItem c1 = new MenuItem();
 			c1.setText("Difficulty Menu");
 			c1.setOnAction(e -> {
-				customDifficulty.show();
+				customDifficulty().show();
 			});
 			c1.getStyleClass().add(INNERBEVEL);
 
-			menu.getItems().addAll(d0, d1, d2, c1);
+			MenuItem r0 = new MenuItem();
+			r0.setText("Restart Same Board");
+			r0.setOnAction(e -> {
+				newGame(state, (infinite != null) ? infinite.getSeed() : board.getSeed());
+			});
+			r0.getStyleClass().add(INNERBEVEL);
+
+			CheckMenuItem n0 = new CheckMenuItem();
+			n0.setText("No Guess Boards");
+			n0.setOnAction(e -> {
+				noGuess = n0.isSelected();
+			});
+			n0.getStyleClass().add(INNERBEVEL);
+
+			MenuItem u0 = new MenuItem();
+			u0.setText("Undo");
+			u0.setAccelerator(KeyCombination.keyCombination("Shortcut+Z"));
+			u0.setOnAction(e -> {
+				undo();
+			});
+			u0.getStyleClass().add(INNERBEVEL);
+
+			MenuItem u1 = new MenuItem();
+			u1.setText("Redo");
+			u1.setAccelerator(KeyCombination.keyCombination("Shortcut+Y"));
+			u1.setOnAction(e -> {
+				redo();
+			});
+			u1.getStyleClass().add(INNERBEVEL);
+
+			Menu shapes = new Menu();
+			shapes.setText("Board Shape");
+			Topology[] topologies = Topology.values();
+			shapeItems = new CheckMenuItem[topologies.length];
+			for (int i = 0; i < topologies.length; i++) {
+				Topology t = topologies[i];
+				CheckMenuItem s0 = new CheckMenuItem();
+				s0.setText(t.getName());
+				s0.setSelected(t == topology);
+				s0.setOnAction(e -> {
+					topology = t;
+					showTopology();
+					hideCustomDifficulty();
+					newGame(state);
+				});
+				s0.getStyleClass().add(INNERBEVEL);
+				shapeItems[i] = s0;
+			}
+			shapes.getItems().addAll(shapeItems);
+			shapes.getStyleClass().add(INNERBEVEL);
+
+			menu.getItems().addAll(d0, d1, d2, i0, c1, r0, n0, shapes, u0, u1);
 
 			Menu scores = new Menu();
 			scores.setText("High Scores");
@@ -437,30 +533,63 @@ public class MineSweeper extends VBox {
 			MenuItem beginnerscore = new MenuItem();
 			beginnerscore.setText("Show Beginner game Scores");
 			beginnerscore.setOnAction(e -> {
-				openHighScoreWindow(scoreDifficulties.BEGINNER);
+				openHighScoreWindow(new BeginnerGame());
 			});
 
 			MenuItem intermediatescore = new MenuItem();
 			intermediatescore.setText("Show Intermediate game Scores");
 			intermediatescore.setOnAction(e -> {
-				openHighScoreWindow(scoreDifficulties.INTERMEDIATE);
+				openHighScoreWindow(new IntermediateGame());
 			});
 
 			MenuItem expertscore = new MenuItem();
 			expertscore.setText("Show Expert game Scores");
 			expertscore.setOnAction(e -> {
-				openHighScoreWindow(scoreDifficulties.EXPERT);
+				openHighScoreWindow(new ExpertGame());
 			});
 
 			MenuItem customscore = new MenuItem();
 			customscore.setText("Show Custom game Scores");
 			customscore.setOnAction(e -> {
-				openHighScoreWindow(scoreDifficulties.CUSTOM);
+				if (lastCustom == null) {
+					showMessage("Play a custom game to see its high scores");
+				} else {
+					openHighScoreWindow(lastCustom);
+				}
 			});
 
 			scores.getItems().addAll(beginnerscore, intermediatescore, expertscore, customscore);
 
-			this.getMenus().addAll(menu, scores);
+			Menu solverMenu = new Menu();
+			solverMenu.setText("Solver");
+
+			MenuItem hint = new MenuItem();
+			hint.setText("Hint");
+			hint.setOnAction(e -> {
+				showHint();
+			});
+
+			MenuItem autoFlag = new MenuItem();
+			autoFlag.setText("Auto Flag");
+			autoFlag.setOnAction(e -> {
+				autoFlag();
+			});
+
+			CheckMenuItem heatmap = new CheckMenuItem();
+			heatmap.setText("Show Mine Probabilities");
+			heatmap.setOnAction(e -> {
+				showProbabilities = heatmap.isSelected();
+				probabilities = null;
+				if (infinite != null) {
+					return;
+				}
+				computeProbabilities();
+				mineField.paintAll();
+			});
+
+			solverMenu.getItems().addAll(hint, autoFlag, heatmap);
+
+			this.getMenus().addAll(menu, scores, solverMenu);
 
 		}
 
@@ -468,22 +597,14 @@ public class MineSweeper extends VBox {
 
 	private void gameWon() {
 		gameOver();
-		face.currentFace.setImage(SUNGLASSES);
-
-		highScorePane.getScores(state.getDifficulty());
+		SpriteAtlas.show(face.currentFace, Sprite.SUNGLASSES);
 
-		if (highScorePane.gameScores.size() > 0) {
+		highScorePane().getScores(state);
 
-			for (int i = 0; i < highScorePane.gameScores.size(); i++) {
-				if (clock.getValue() < highScorePane.gameScores.get(i).getScore()) {
-					setupPlayerNameStage();
-				}
-			}
-			if (highScorePane.gameScores.size() < 3) {
-				setupPlayerNameStage();
-			}
-
-		} else {
+		// the score tables are for square boards only, played from the first click on a board
+		// nobody could have seen before
+		if (!undone && !fixedSeed && !resumed && board.getTopology() == Topology.SQUARE
+				&& highScorePane.isHighScore(clock.getValue())) {
 			setupPlayerNameStage();
 		}
 
@@ -492,12 +613,68 @@ public class MineSweeper extends VBox {
 	private void gameOver() {
 		gameOver = true;
 		timeline.stop();
-		revealAll();
+		saveReplay();
+	}
+
+	/** Writes the finished game's replay to the replay folder, off the FX thread */
+	private void saveReplay() {
+		if (resumed || undone || board.getTopology() != Topology.SQUARE) {
+			// the moves made before the game was saved, or the ones taken back, are not in the
+			// replay, and a replay is always played back on a square board
+			return;
+		}
+		Replay finished = replay;
+		finished.setSeed(board.getSeed());
+		String fileName = REPLAYFOLDER + "/" + state.getDifficulty().toString().toLowerCase() + "-"
+				+ System.currentTimeMillis() + ".msr";
+		CompletableFuture.runAsync(() -> {
+			try {
+				new File(REPLAYFOLDER).mkdir();
+				finished.write(fileName);
+			} catch (IOException e) {
+				System.out.println(e.getMessage());
+			}
+		});
+	}
+
+	/** Saves a game in progress so the next start can pick it up */
+	private void saveGame() {
+		if (infinite != null || !board.isGenerated() || gameOver) {
+			return;
+		}
+		try {
+			new File(SAVEFOLDER).mkdir();
+			new SavedGame(state, board, clock.getValue()).write(SAVEFILE);
+		} catch (IOException e) {
+			System.out.println(e.getMessage());
+		}
+	}
+
+	/** Picks up the game saved when the window was last closed, if there is one */
+	private boolean resumeGame() {
+		File file = new File(SAVEFILE);
+		if (!file.exists()) {
+			return false;
+		}
+		try {
+			SavedGame saved = SavedGame.read(SAVEFILE);
+			startGame(saved.getDifficulty(), saved.getBoard());
+			resumed = true;
+			clock.reset(saved.getElapsed());
+			timeline.play();
+			return true;
+		} catch (IOException e) {
+			System.out.println(e.getMessage());
+			return false;
+		} finally {
+			// a save is only resumed once
+			file.delete();
+		}
 	}
 
 	private void gameLost() {
 		gameOver();
-		face.currentFace.setImage(DEAD);
+		SpriteAtlas.show(face.currentFace, Sprite.DEAD);
 	}
 
 	private Pane bevelBorder(Pane p) {
@@ -524,38 +701,6 @@ public class MineSweeper extends VBox {
 		}
 	}
 
-	private class HighScore implements Comparable<HighScore> {
-		private String name, difficulty;
-		private int time;
-
-		HighScore(String name, String difficulty, int score) {
-			this.name = name;
-			this.difficulty = difficulty;
-			this.time = score;
-		}
-
-		private String getName() {
-			return name;
-		}
-
-		private String getDifficulty() {
-			return difficulty;
-		}
-
-		private int getScore() {
-			return time;
-		}
-
-		public String toString() {
-			return name + " beat " + difficulty + " in " + time + " seconds.";
-		}
-
-		@Override
-		public int compareTo(HighScore o) {
-			return (this.time < o.time) ? -1 : 1;
-		}
-	}
-
 	private class MineSweeperDifficultyMenu extends VBox {
 		private TextField widthField = new TextField();
 		private TextField heightField = new TextField();
@@ -564,6 +709,8 @@ public class MineSweeper extends VBox {
 		private static final String ENTERHEIGHT = "Enter Height";
 		private static final String ENTERWIDTH = "Enter Width";
 		private static final String ENTERMINES = "Enter Mines";
+		private static final int MAXWIDTH = 10000;
+		private static final int MAXHEIGHT = 10000;
 
 		MineSweeperDifficultyMenu() {
 
@@ -735,8 +882,8 @@ public class MineSweeper extends VBox {
 							int h = Integer.parseInt(heightField.getText());
 							int m = Integer.parseInt(mineTextField.getText());
 
-							InputHandler.inRangeOrThrow("Width ", w, 7, 40);
-							InputHandler.inRangeOrThrow("Height ", h, 7, 25);
+							InputHandler.inRangeOrThrow("Width ", w, 7, MAXWIDTH);
+							InputHandler.inRangeOrThrow("Height ", h, 7, MAXHEIGHT);
 							InputHandler.inRangeOrThrow("Mine ", m, 1, (w * h) / 2);
 
 							newGame(new CustomGame(w, h, m));
@@ -796,19 +943,47 @@ public class MineSweeper extends VBox {
 	}
 
 	private void newGame(Difficulty s) {
+		newGame(s, new SplittableRandom().nextLong());
+		fixedSeed = false;
+	}
+
+	/** Starts a game whose board is built from the given seed and the first click */
+	private void newGame(Difficulty s, long seed) {
+		if (s.getDifficulty() == ScoreDifficulty.INFINITE) {
+			startInfiniteGame(s, seed);
+		} else {
+			startGame(s, new BoardEngine(s.getWidth(), s.getHeight(), s.getNMines(), seed, topology));
+		}
+	}
+
+	/** Shows a board, new or restored, and resets everything else to match it */
+	private void startGame(Difficulty s, BoardEngine b) {
 
 		state = s;
+		if (s.getDifficulty() == ScoreDifficulty.CUSTOM) {
+			lastCustom = s;
+		}
 		timeline.stop();
-		numRevealed = 0;
 		gameOver = false;
-		firstClick = true;
-
-		flagCounter.reset(state.getNMines());
+		resumed = false;
+		undone = false;
+		infinite = null;
+		board = b;
+		board.setHistoryDepth(undoDepth);
+		topology = b.getTopology();
+		showTopology();
+		replay = new Replay(state.getWidth(), state.getHeight(), state.getNMines());
+		solver = null;
+		probabilities = null;
+		fixedSeed = true;
+
+		flagCounter.reset(state.getNMines() - board.getNumFlagged());
 		clock.reset(0);
 		face.reset();
 
 		fieldPane.getChildren().clear();
-		fieldPane.getChildren().add(new MineField());
+		mineField = new MineField();
+		fieldPane.getChildren().add(mineField);
 
 		stage.sizeToScene();
 
@@ -821,16 +996,43 @@ public class MineSweeper extends VBox {
 
 	}
 
+	/** Ticks the menu item of the current topology */
+	private void showTopology() {
+		Topology[] topologies = Topology.values();
+		for (int i = 0; i < shapeItems.length; i++) {
+			shapeItems[i].setSelected(topologies[i] == topology);
+		}
+	}
+
+	/** Shows an endless board built from the given seed */
+	private void startInfiniteGame(Difficulty s, long seed) {
+		state = s;
+		timeline.stop();
+		gameOver = false;
+		infinite = new InfiniteBoard(s.getNMines(), seed, INFINITECHUNKS);
+		mineField = null;
+
+		flagCounter.reset(0);
+		clock.reset(0);
+		face.reset();
+
+		fieldPane.getChildren().clear();
+		fieldPane.getChildren().add(new InfiniteField());
+
+		stage.sizeToScene();
+		stage.setX(((Screen.getScreens().get(0).getBounds().getMaxX()) / 2) - ((stage.getWidth()) / 2));
+		stage.setY(((Screen.getScreens().get(0).getBounds().getMaxY()) / 2) - ((stage.getHeight()) / 2));
+	}
+
 	private class Face extends Button {
 
 		private ImageView currentFace;
 
 		Face() {
 
-			currentFace = new ImageView(SMILE);
-			int size = 52;
-			currentFace.setFitWidth(size);
-			currentFace.setFitHeight(size);
+			currentFace = new ImageView();
+			SpriteAtlas.show(currentFace, Sprite.SMILE);
+			int size = SpriteAtlas.FACESIZE;
 
 			setMinWidth(size);
 			setMaxWidth(size);
@@ -840,451 +1042,606 @@ public class MineSweeper extends VBox {
 			this.setGraphic(currentFace);
 
 			this.setOnMousePressed(e -> {
-				currentFace.setImage(SMILEPRESSED);
+				SpriteAtlas.show(currentFace, Sprite.SMILEPRESSED);
 			});
 
 			this.setOnMouseReleased(e -> {
-				currentFace.setImage(SMILE);
+				SpriteAtlas.show(currentFace, Sprite.SMILE);
 				newGame(state);
 			});
 
 		}
 
 		private void reset() {
-			currentFace.setImage(SMILE);
+			SpriteAtlas.show(currentFace, Sprite.SMILE);
 		}
 	}
 
-	private class Mine extends Button {
-		private int x, y, adjMines;
-		private boolean flagged, revealed, hasMine;
-		private ImageView currentImage;
-		private Image hiddenImage;
+	/**
+	 * The playing field, drawn onto a single canvas. Only the cells inside the
+	 * visible viewport are drawn, and after a move only the cells it changed are
+	 * redrawn. Large boards are scrolled with the mouse wheel. A hexagonal board
+	 * is drawn as offset rows, with every odd row moved half a cell right.
+	 */
+	private class MineField extends Pane {
+		private static final int CELLSIZE = SpriteAtlas.CELLSIZE;
+		private static final int SCREENMARGIN = 200;
+		private final Color HIGHLIGHT = Color.rgb(0, 255, 0, 0.4);
+		// tints for the probability overlay, from certainly safe to certainly a mine
+		private final Color[] HEAT = heatColors(11);
+
+		private Canvas canvas;
+		private GraphicsContext gc;
+		private int offsetX, offsetY;
+		// how far the odd rows are moved right
+		private final int oddShift = (board.getTopology() == Topology.HEX) ? CELLSIZE / 2 : 0;
+		// set while a board that needs no guessing is searched for, when clicks are ignored
+		private boolean generating;
 
-		Mine(int x, int y) {
-			this.x = x;
-			this.y = y;
-			adjMines = 0;
-			flagged = false;
-			revealed = false;
+		MineField() {
+			int maxWidth = (int) Screen.getPrimary().getVisualBounds().getWidth() - SCREENMARGIN;
+			int maxHeight = (int) Screen.getPrimary().getVisualBounds().getHeight() - SCREENMARGIN;
 
-			int size = 32;
-			setMinWidth(size);
-			setMaxWidth(size);
-			setMinHeight(size);
-			setMaxHeight(size);
+			int viewWidth = Math.min(board.getWidth(), Math.max(1, maxWidth / CELLSIZE)) * CELLSIZE + oddShift;
+			int viewHeight = Math.min(board.getHeight(), Math.max(1, maxHeight / CELLSIZE)) * CELLSIZE;
 
-			currentImage = new ImageView(EMPTYSPACE);
+			canvas = new Canvas(viewWidth, viewHeight);
+			gc = canvas.getGraphicsContext2D();
+			getChildren().add(canvas);
 
-			currentImage.setFitHeight(size);
-			currentImage.setFitWidth(size);
-			setGraphic(currentImage);
+			canvas.setOnMouseClicked(e -> {
+				int y = cellY(e.getY());
+				int x = (y < 0) ? -1 : cellX(e.getX(), y);
+				if (x < 0 || y < 0 || board.isGameOver() || generating) {
+					return;
+				}
 
-			setOnMouseClicked(e -> {
 				if (e.getButton() == MouseButton.PRIMARY) {
-					leftClick();
+					leftClick(x, y);
 				} else if (e.getButton() == MouseButton.SECONDARY) {
-					rightClick();
+					rightClick(x, y);
 				} else if (e.getButton() == MouseButton.MIDDLE) {
-					middleClick();
+					middleClick(x, y);
 				}
 			});
 
-			this.setOnMousePressed(e -> {
-				if (!gameOver)
-					face.currentFace.setImage(OFACE);
+			canvas.setOnMousePressed(e -> {
+				if (!board.isGameOver())
+					SpriteAtlas.show(face.currentFace, Sprite.OFACE);
 			});
 
-			this.setOnMouseReleased(e -> {
-				if (!gameOver)
-					face.currentFace.setImage(SMILE);
+			canvas.setOnMouseReleased(e -> {
+				if (!board.isGameOver())
+					SpriteAtlas.show(face.currentFace, Sprite.SMILE);
+			});
+
+			canvas.setOnScroll(e -> {
+				scrollTo(offsetX - (int) e.getDeltaX(), offsetY - (int) e.getDeltaY());
 			});
+
+			paintAll();
 		}
 
-		private void leftClick() {
-			if (!gameOver && !revealed && !flagged) {
+		/** The column under a point on the canvas in row y, or -1 */
+		private int cellX(double px, int y) {
+			int x = Math.floorDiv((int) px + offsetX - shift(y), CELLSIZE);
+			return (px < 0 || x < 0 || x >= board.getWidth()) ? -1 : x;
+		}
 
-				if (firstClick) {
-					timeline.play();
-					generateMines(this.x, this.y);
-					firstClick = false;
-				}
+		/** The row under a point on the canvas, or -1 */
+		private int cellY(double py) {
+			int y = ((int) py + offsetY) / CELLSIZE;
+			return (py < 0 || y >= board.getHeight()) ? -1 : y;
+		}
 
-				if (!hasMine) {
-					reveal();
-					recursiveReveal(this.x, this.y);
-					resetFlags();
-				} else {
-					gameLost();
-					this.currentImage.setImage(REDMINE);
-				}
-			}
+		/** How far the cells of row y are drawn to the right of the grid */
+		private int shift(int y) {
+			return ((y & 1) != 0) ? oddShift : 0;
 		}
 
-		private void rightClick() {
-			if (!gameOver && !revealed) {
-				if (flagged) {
-					flagged = false;
-					flagCounter.tick();
-					currentImage.setImage(EMPTYSPACE);
-				} else {
-					if (flagCounter.value > 0) {
-						flagged = true;
-						currentImage.setImage(FLAG);
-						flagCounter.antiTick();
-					}
-				}
+		private void scrollTo(int x, int y) {
+			int maxX = board.getWidth() * CELLSIZE + oddShift - (int) canvas.getWidth();
+			int maxY = board.getHeight() * CELLSIZE - (int) canvas.getHeight();
+			x = Math.max(0, Math.min(x, maxX));
+			y = Math.max(0, Math.min(y, maxY));
+			if (x != offsetX || y != offsetY) {
+				offsetX = x;
+				offsetY = y;
+				paintAll();
 			}
 		}
 
-		private void middleClick() {
-
-			int numFlags = 0;
-			if (this.adjMines > 0) {
-				for (int i = ((x == 0) ? 0 : -1); i <= ((x == state.getWidth() - 1) ? 0 : 1); i++) {
-					for (int j = ((y == 0) ? 0 : -1); j <= ((y == state.getHeight() - 1) ? 0 : 1); j++) {
-						if (mines[this.x + i][this.y + j].flagged) {
-							numFlags++;
-						}
-					}
+		private void leftClick(int x, int y) {
+			if (!board.isGenerated()) {
+				if (noGuess && !fixedSeed && !board.isFlagged(x, y)) {
+					generateNoGuess(x, y);
+					return;
 				}
+				timeline.play();
 			}
-			if (numFlags == adjMines) {
-				for (int i = ((x == 0) ? 0 : -1); i <= ((x == state.getWidth() - 1) ? 0 : 1); i++) {
-					for (int j = ((y == 0) ? 0 : -1); j <= ((y == state.getHeight() - 1) ? 0 : 1); j++) {
-						if (!mines[this.x + i][this.y + j].revealed && !mines[this.x + i][this.y + j].flagged) {
-							mines[this.x + i][this.y + j].reveal();
-							if (mines[this.x + i][this.y + j].hasMine) {
-								gameLost();
-								mines[this.x + i][this.y + j].currentImage.setImage(REDMINE);
-							}
-						}
-					}
-				}
+			replay.record(board.index(x, y), Replay.REVEAL);
+			if (board.reveal(x, y) > 0) {
+				boardChanged();
 			}
 		}
 
-		private void reveal() {
-			currentImage.setImage(hiddenImage);
-			if (!revealed) {
-				numRevealed++;
-				if (!gameOver && numRevealed == (state.getWidth() * state.getHeight()) - state.getNMines()) {
-					gameWon();
+		/**
+		 * Searches for a board that needs no guessing on another thread, since the
+		 * search can take the generator's whole budget, and makes the first click
+		 * on it once it is found
+		 */
+		private void generateNoGuess(int x, int y) {
+			BoardEngine old = board;
+			NoGuessGenerator generator = new NoGuessGenerator(board.getWidth(), board.getHeight(), board.getNMines(),
+					NoGuessGenerator.DEFAULTBUDGET, board.getTopology());
+			Task<BoardEngine> search = new Task<BoardEngine>() {
+				@Override
+				protected BoardEngine call() {
+					return generator.generate(x, y);
 				}
-			}
-
-			revealed = true;
+			};
+			search.setOnSucceeded(e -> {
+				generating = false;
+				if (board != old) {
+					// another game was started while it searched
+					return;
+				}
+				// the new board starts without any flags placed on the old one
+				board = search.getValue();
+				board.setHistoryDepth(undoDepth);
+				solver = null;
+				probabilities = null;
+				flagCounter.reset(board.getNMines());
+				replay.clear();
+				paintAll();
+				timeline.play();
+				leftClick(x, y);
+			});
+			search.setOnFailed(e -> {
+				generating = false;
+				System.out.println(search.getException().getMessage());
+			});
+			generating = true;
+			Thread thread = new Thread(search, "no guess search");
+			thread.setDaemon(true);
+			thread.start();
 		}
 
-	}
-
-	private class MineField extends GridPane {
-		MineField() {
-			mines = new Mine[state.getWidth()][state.getHeight()];
-
-			for (int i = 0; i < state.getWidth(); i++) {
-				for (int j = 0; j < state.getHeight(); j++) {
-					mines[i][j] = new Mine(i, j);
-					this.add(mines[i][j], i, j);
-				}
+		private void rightClick(int x, int y) {
+			replay.record(board.index(x, y), Replay.FLAG);
+			if (board.toggleFlag(x, y)) {
+				flagCounter.reset(board.getNMines() - board.getNumFlagged());
+				paintCell(x, y);
 			}
-			setVgap(0);
-			setHgap(0);
 		}
 
-	}
-
-	private void generateMines(int fx, int fy) {
-
-		int nMines = state.getNMines();
-		int x, y;
-
-		// this generates randomly placed mines
-		while (nMines > 0) {
-			x = (int) (Math.random() * state.getWidth());
-			y = (int) (Math.random() * state.getHeight());
-			if (!mines[x][y].hasMine && Math.sqrt(Math.pow(x - fx, 2) + Math.pow(y - fy, 2)) >= 1.5) {
-				mines[x][y].hasMine = true;
-				nMines--;
+		private void middleClick(int x, int y) {
+			replay.record(board.index(x, y), Replay.CHORD);
+			if (board.chord(x, y) > 0) {
+				boardChanged();
 			}
 		}
 
-		// this generates the number of adjacent mines
-		for (int i = 0; i < state.getWidth(); i++) {
-			for (int j = 0; j < state.getHeight(); j++) {
-
-				for (int m = ((i == 0) ? 0 : -1); m <= ((i == state.getWidth() - 1) ? 0 : 1); m++) {
-					for (int n = ((j == 0) ? 0 : -1); n <= ((j == state.getHeight() - 1) ? 0 : 1); n++) {
-
-						if (mines[i + m][j + n].hasMine) {
-							mines[i][j].adjMines++;
-						}
-					}
-				}
-
-				if (!mines[i][j].hasMine) {
-					mines[i][j].hiddenImage = getMineImage(mines[i][j].adjMines);
-				} else {
-					mines[i][j].hiddenImage = MINE;
-
-					// TODO remove this. its so i can test highscores
-					// mines[i][j].currentImage.setImage(MINE);
-
+		/** Draws every cell in the viewport */
+		private void paintAll() {
+			if (oddShift > 0) {
+				// the half cells at the ends of the rows are never drawn over
+				gc.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+			}
+			int firstY = offsetY / CELLSIZE;
+			int lastY = Math.min(board.getHeight() - 1, (offsetY + (int) canvas.getHeight() - 1) / CELLSIZE);
+
+			for (int y = firstY; y <= lastY; y++) {
+				int left = offsetX - shift(y);
+				int firstX = Math.max(0, Math.floorDiv(left, CELLSIZE));
+				int lastX = Math.min(board.getWidth() - 1, (left + (int) canvas.getWidth() - 1) / CELLSIZE);
+				for (int x = firstX; x <= lastX; x++) {
+					paintCell(x, y);
 				}
 			}
 		}
 
-	}
-
-	private void recursiveReveal(int x, int y) {
+		private Color[] heatColors(int steps) {
+			Color[] colors = new Color[steps];
+			for (int i = 0; i < steps; i++) {
+				double p = i / (double) (steps - 1);
+				colors[i] = Color.rgb((int) (255 * p), (int) (255 * (1 - p)), 0, 0.45);
+			}
+			return colors;
+		}
 
-		if (mines[x][y].adjMines > 0 || mines[x][y].hasMine) {
-			return;
+		/** Scrolls a cell into view and tints it */
+		private void highlight(int x, int y) {
+			int px = x * CELLSIZE + shift(y) - offsetX;
+			int py = y * CELLSIZE - offsetY;
+			if (px < 0 || py < 0 || px + CELLSIZE > canvas.getWidth() || py + CELLSIZE > canvas.getHeight()) {
+				scrollTo(x * CELLSIZE - (int) canvas.getWidth() / 2, y * CELLSIZE - (int) canvas.getHeight() / 2);
+			}
+			paintCell(x, y);
+			gc.setFill(HIGHLIGHT);
+			gc.fillRect(x * CELLSIZE + shift(y) - offsetX, y * CELLSIZE - offsetY, CELLSIZE, CELLSIZE);
 		}
 
-		for (int i = ((x == 0) ? 0 : -1); i <= ((x == state.getWidth() - 1) ? 0 : 1); i++) {
-			for (int j = ((y == 0) ? 0 : -1); j <= ((y == state.getHeight() - 1) ? 0 : 1); j++) {
-				if (mines[x + i][y + j].adjMines == 0 && !mines[x + i][y + j].revealed) {
-					mines[x + i][y + j].reveal();
-					recursiveReveal(x + i, y + j);
-				} else {
-					mines[x + i][y + j].reveal();
+		/** Draws one cell if it is inside the viewport */
+		private void paintCell(int x, int y) {
+			int px = x * CELLSIZE + shift(y) - offsetX;
+			int py = y * CELLSIZE - offsetY;
+			if (px <= -CELLSIZE || py <= -CELLSIZE || px >= canvas.getWidth() || py >= canvas.getHeight()) {
+				return;
+			}
+			SpriteAtlas.draw(gc, cellImage(x, y), px, py);
 
-				}
+			if (showProbabilities && probabilities != null && !board.isGameOver() && !board.isRevealed(x, y)
+					&& probabilities.getProbability(x, y) != ProbabilityEngine.REVEALED) {
+				float p = probabilities.getProbability(x, y);
+				gc.setFill(HEAT[Math.round(p * (HEAT.length - 1))]);
+				gc.fillRect(px, py, CELLSIZE, CELLSIZE);
 			}
 		}
 
 	}
 
-	private void resetFlags() {
-		for (int i = 0; i < state.getWidth(); i++) {
-			for (int j = 0; j < state.getHeight(); j++) {
-				if (mines[i][j].flagged) {
-					mines[i][j].revealed = false;
-					mines[i][j].currentImage.setImage(FLAG);
+	/**
+	 * The playing field of an infinite game, a fixed window onto the board that
+	 * scrolls with the mouse wheel as far as the player likes. The player's
+	 * cell (0, 0) starts in the middle.
+	 */
+	private class InfiniteField extends Pane {
+		private static final int CELLSIZE = SpriteAtlas.CELLSIZE;
+		private static final int SCREENMARGIN = 200;
+		// the view is as large as an expert board, if the screen allows
+		private static final int VIEWCELLSWIDE = 32;
+		private static final int VIEWCELLSHIGH = 16;
+
+		private Canvas canvas;
+		private GraphicsContext gc;
+		private int offsetX, offsetY;
+
+		InfiniteField() {
+			int maxWidth = (int) Screen.getPrimary().getVisualBounds().getWidth() - SCREENMARGIN;
+			int maxHeight = (int) Screen.getPrimary().getVisualBounds().getHeight() - SCREENMARGIN;
+
+			int viewWidth = Math.min(VIEWCELLSWIDE, Math.max(1, maxWidth / CELLSIZE)) * CELLSIZE;
+			int viewHeight = Math.min(VIEWCELLSHIGH, Math.max(1, maxHeight / CELLSIZE)) * CELLSIZE;
+			offsetX = -viewWidth / 2;
+			offsetY = -viewHeight / 2;
+
+			canvas = new Canvas(viewWidth, viewHeight);
+			gc = canvas.getGraphicsContext2D();
+			getChildren().add(canvas);
+
+			canvas.setOnMouseClicked(e -> {
+				int x = Math.floorDiv((int) e.getX() + offsetX, CELLSIZE);
+				int y = Math.floorDiv((int) e.getY() + offsetY, CELLSIZE);
+				if (infinite.isGameOver()) {
+					return;
 				}
-			}
-		}
-	}
 
-	private void revealAll() {
-		for (int i = 0; i < state.getWidth(); i++) {
-			for (int j = 0; j < state.getHeight(); j++) {
-				mines[i][j].reveal();
-				if (mines[i][j].hasMine) {
-					if (mines[i][j].flagged) {
-						mines[i][j].hiddenImage = FLAG;
-					} else {
-						mines[i][j].hiddenImage = MINE;
+				if (e.getButton() == MouseButton.PRIMARY) {
+					if (!infinite.isStarted()) {
+						timeline.play();
 					}
-				} else {
-					if (mines[i][j].flagged) {
-						mines[i][j].hiddenImage = XMINE;
-
+					if (infinite.reveal(x, y) > 0) {
+						infiniteChanged();
+					}
+				} else if (e.getButton() == MouseButton.SECONDARY) {
+					if (infinite.toggleFlag(x, y)) {
+						flagCounter.reset(Math.min(999, infinite.getNumFlagged()));
+						paintCell(x, y);
+					}
+				} else if (e.getButton() == MouseButton.MIDDLE) {
+					if (infinite.chord(x, y) > 0) {
+						infiniteChanged();
 					}
 				}
-			}
-		}
-	}
-
-	private class Counter extends HBox {
-
-		private Integer value;
-		ImageView digit1th, digit10th, digit100th;
-
-		Counter() {
+			});
 
-			int w = 13 * 2;
-			int h = 24 * 2;
-			w = 28;
-			h = 52;
+			canvas.setOnMousePressed(e -> {
+				if (!infinite.isGameOver())
+					SpriteAtlas.show(face.currentFace, Sprite.OFACE);
+			});
 
-			digit1th = new ImageView(getDigitImage(0));
-			digit10th = new ImageView(getDigitImage(0));
-			digit100th = new ImageView(getDigitImage(0));
+			canvas.setOnMouseReleased(e -> {
+				if (!infinite.isGameOver())
+					SpriteAtlas.show(face.currentFace, Sprite.SMILE);
+			});
 
-			digit1th.setFitWidth(w);
-			digit1th.setFitHeight(h);
+			canvas.setOnScroll(e -> {
+				offsetX -= (int) e.getDeltaX();
+				offsetY -= (int) e.getDeltaY();
+				paintAll();
+			});
 
-			digit10th.setFitWidth(w);
-			digit10th.setFitHeight(h);
+			paintAll();
+		}
 
-			digit100th.setFitWidth(w);
-			digit100th.setFitHeight(h);
+		/** Repaints the cells the last move changed and ends the game if it hit a mine */
+		private void infiniteChanged() {
+			if (infinite.isGameOver() || infinite.isChangedOverflow()) {
+				paintAll();
+			} else {
+				for (int i = 0; i < infinite.getChangedCount(); i++) {
+					paintCell(infinite.getChangedX(i), infinite.getChangedY(i));
+				}
+			}
 
-			getChildren().addAll(digit100th, digit10th, digit1th);
+			if (!gameOver && infinite.isGameOver()) {
+				gameOver = true;
+				timeline.stop();
+				SpriteAtlas.show(face.currentFace, Sprite.DEAD);
+			}
 		}
 
-		private int getValue() {
-			return value;
-		}
+		/** Draws every cell in the view */
+		private void paintAll() {
+			int firstX = Math.floorDiv(offsetX, CELLSIZE);
+			int firstY = Math.floorDiv(offsetY, CELLSIZE);
+			int lastX = Math.floorDiv(offsetX + (int) canvas.getWidth() - 1, CELLSIZE);
+			int lastY = Math.floorDiv(offsetY + (int) canvas.getHeight() - 1, CELLSIZE);
 
-		private void reset(int n) {
-			value = n;
-			setDigits();
+			for (int y = firstY; y <= lastY; y++) {
+				for (int x = firstX; x <= lastX; x++) {
+					paintCell(x, y);
+				}
+			}
 		}
 
-		private void tick() {
-			this.value++;
-			if (this.value > 999) {
-				this.value = 999;
+		/** Draws one cell if it is inside the view */
+		private void paintCell(int x, int y) {
+			int px = x * CELLSIZE - offsetX;
+			int py = y * CELLSIZE - offsetY;
+			if (px <= -CELLSIZE || py <= -CELLSIZE || px >= canvas.getWidth() || py >= canvas.getHeight()) {
+				return;
 			}
-			this.setDigits();
+			SpriteAtlas.draw(gc, cellImage(x, y), px, py);
 		}
 
-		private void antiTick() {
-			this.value--;
-			if (this.value < 0) {
-				this.value = 0;
+		/** Chooses the sprite for a cell the same way as {@link MineSweeper#cellImage(int, int)} */
+		private Sprite cellImage(int x, int y) {
+			if (!infinite.isRevealed(x, y) && !infinite.isGameOver()) {
+				return infinite.isFlagged(x, y) ? Sprite.FLAG : Sprite.EMPTYSPACE;
 			}
-			this.setDigits();
+			if (infinite.hasMine(x, y)) {
+				if (infinite.isExploded(x, y)) {
+					return Sprite.REDMINE;
+				}
+				return infinite.isFlagged(x, y) ? Sprite.FLAG : Sprite.MINE;
+			}
+			if (infinite.isFlagged(x, y)) {
+				return Sprite.XMINE;
+			}
+			return getMineImage(infinite.getAdjacentMines(x, y));
 		}
+	}
 
-		private void setDigits() {
-			if (this.value < 10) {
-				digit1th.setImage(getDigitImage(this.value));
-				digit10th.setImage(getDigitImage(0));
-				digit100th.setImage(getDigitImage(0));
-			} else if (this.value < 100) {
-				digit1th.setImage(getDigitImage(this.value.toString().charAt(1)));
-				digit10th.setImage(getDigitImage(this.value.toString().charAt(0)));
-				digit100th.setImage(getDigitImage(0));
-			} else if (this.value < 1000) {
-				digit1th.setImage(getDigitImage(this.value.toString().charAt(2)));
-				digit10th.setImage(getDigitImage(this.value.toString().charAt(1)));
-				digit100th.setImage(getDigitImage(this.value.toString().charAt(0)));
+	/**
+	 * Chooses the sprite for a cell from the state of the board. Once the game is
+	 * over every cell is drawn as if it had been revealed
+	 */
+	private Sprite cellImage(int x, int y) {
+		if (!board.isRevealed(x, y) && !board.isGameOver()) {
+			return board.isFlagged(x, y) ? Sprite.FLAG : Sprite.EMPTYSPACE;
+		}
+		if (board.hasMine(x, y)) {
+			if (board.getExplodedCell() == board.index(x, y)) {
+				return Sprite.REDMINE;
 			}
+			return board.isFlagged(x, y) ? Sprite.FLAG : Sprite.MINE;
 		}
-
+		if (board.isFlagged(x, y)) {
+			return Sprite.XMINE;
+		}
+		return getMineImage(board.getAdjacentMines(x, y));
 	}
 
-	private interface Difficulty {
-		int getWidth();
-
-		int getHeight();
-
-		int getNMines();
-
-		String getName();
-
-		scoreDifficulties getDifficulty();
-
+	/** The solver of the current board, built and caught up with the board the first time it is asked for */
+	private Solver solver() {
+		if (solver == null) {
+			solver = new Solver(board);
+			solver.rebuild();
+		}
+		return solver;
 	}
 
-	private class BeginnerGame implements Difficulty {
-		@Override
-		public int getWidth() {
-			return 8;
-		}
+	/** Tells the player something in a small window over the game */
+	private void showMessage(String message) {
+		Alert alert = new Alert(Alert.AlertType.INFORMATION, message);
+		alert.initOwner(stage);
+		alert.setHeaderText(null);
+		alert.show();
+	}
 
-		@Override
-		public int getHeight() {
-			return 8;
+	/** Highlights a cell the solver has proven safe */
+	private void showHint() {
+		if (infinite != null || board.isGameOver()) {
+			return;
 		}
-
-		@Override
-		public int getNMines() {
-			return 10;
+		int c = solver().nextSafe();
+		if (c < 0) {
+			showMessage("No cell is certainly safe, you will have to guess");
+		} else {
+			mineField.highlight(c % board.getWidth(), c / board.getWidth());
 		}
+	}
 
-		@Override
-		public String getName() {
-			return "Beginner";
+	/** Flags every cell the solver has proven to be a mine */
+	private void autoFlag() {
+		if (infinite != null) {
+			return;
 		}
-
-		@Override
-		public scoreDifficulties getDifficulty() {
-			return scoreDifficulties.BEGINNER;
+		Solver solver = solver();
+		for (int i = 0; i < solver.getMineCount() && !board.isGameOver(); i++) {
+			int c = solver.getMine(i);
+			int x = c % board.getWidth();
+			int y = c / board.getWidth();
+			if (!board.isFlagged(x, y) && board.toggleFlag(x, y)) {
+				replay.record(c, Replay.FLAG);
+				mineField.paintCell(x, y);
+			}
 		}
+		flagCounter.reset(board.getNMines() - board.getNumFlagged());
 	}
 
-	private class IntermediateGame implements Difficulty {
-		@Override
-		public int getWidth() {
-			return 16;
+	/** Takes back the last move. A game lost to that move carries on from before it */
+	private void undo() {
+		if (infinite != null || board.getStatus() == BoardEngine.Status.WON || board.undo() == 0) {
+			return;
 		}
+		undone = true;
+		// the solver only learns, so what it proved from the cells hidden again is dropped
+		solver = null;
+		flagCounter.reset(board.getNMines() - board.getNumFlagged());
+		boardChanged();
+		if (gameOver) {
+			gameOver = false;
+			face.reset();
+			timeline.play();
+			// the mines shown at the end of the game are hidden again
+			mineField.paintAll();
+		}
+	}
 
-		@Override
-		public int getHeight() {
-			return 16;
+	/** Makes the last undone move again */
+	private void redo() {
+		if (infinite != null || gameOver || board.redo() == 0) {
+			return;
 		}
+		solver = null;
+		flagCounter.reset(board.getNMines() - board.getNumFlagged());
+		boardChanged();
+	}
 
-		@Override
-		public int getNMines() {
-			return 40;
+	/** Repaints the cells the last move changed and ends the game if it won or lost it */
+	private void boardChanged() {
+		if (solver != null) {
+			solver.update();
 		}
+		// a move can change the odds anywhere on the board
+		computeProbabilities();
 
-		@Override
-		public String getName() {
-			return "Intermediate";
+		if (board.isGameOver() || board.isChangedOverflow()) {
+			mineField.paintAll();
+		} else {
+			for (int i = 0; i < board.getChangedCount(); i++) {
+				int c = board.getChangedCell(i);
+				mineField.paintCell(c % board.getWidth(), c / board.getWidth());
+			}
 		}
 
-		@Override
-		public scoreDifficulties getDifficulty() {
-			return scoreDifficulties.INTERMEDIATE;
+		if (!gameOver) {
+			if (board.getStatus() == BoardEngine.Status.WON) {
+				gameWon();
+			} else if (board.getStatus() == BoardEngine.Status.LOST) {
+				gameLost();
+			}
 		}
 	}
 
-	private class ExpertGame implements Difficulty {
-		@Override
-		public int getWidth() {
-			return 32;
+	/**
+	 * Works out the heatmap on another thread from a copy of the board, and
+	 * repaints the board once it is done. The engine answers one query at a
+	 * time, so a move made meanwhile has it worked out again after that
+	 */
+	private void computeProbabilities() {
+		if (!showProbabilities || infinite != null || !board.isGenerated() || board.isGameOver()) {
+			return;
 		}
-
-		@Override
-		public int getHeight() {
-			return 16;
+		if (computingProbabilities) {
+			probabilitiesStale = true;
+			return;
 		}
-
-		@Override
-		public int getNMines() {
-			return 99;
+		if (probabilities == null) {
+			probabilities = new ProbabilityEngine(board);
 		}
+		ProbabilityEngine engine = probabilities;
+		engine.capture();
+		Task<float[]> query = new Task<float[]>() {
+			@Override
+			protected float[] call() {
+				return engine.computeCaptured();
+			}
+		};
+		query.setOnSucceeded(e -> probabilitiesComputed(engine));
+		query.setOnFailed(e -> {
+			System.out.println(query.getException().getMessage());
+			probabilitiesComputed(null);
+		});
+		computingProbabilities = true;
+		Thread thread = new Thread(query, "mine probabilities");
+		thread.setDaemon(true);
+		thread.start();
+	}
 
-		@Override
-		public String getName() {
-			return "Expert";
+	/** Called on the FX thread when a heatmap query ends */
+	private void probabilitiesComputed(ProbabilityEngine engine) {
+		computingProbabilities = false;
+		if (probabilitiesStale) {
+			probabilitiesStale = false;
+			computeProbabilities();
 		}
-
-		@Override
-		public scoreDifficulties getDifficulty() {
-			return scoreDifficulties.EXPERT;
+		// the game may have changed or the heatmap been turned off while it ran
+		if (engine != null && engine == probabilities && infinite == null) {
+			mineField.paintAll();
 		}
 	}
 
-	private class CustomGame implements Difficulty {
+	private class Counter extends HBox {
+
+		private Integer value;
+		ImageView digit1th, digit10th, digit100th;
+
+		Counter() {
+
+			digit1th = new ImageView();
+			digit10th = new ImageView();
+			digit100th = new ImageView();
 
-		private int width, height, mines;
+			SpriteAtlas.show(digit1th, getDigitImage(0));
+			SpriteAtlas.show(digit10th, getDigitImage(0));
+			SpriteAtlas.show(digit100th, getDigitImage(0));
 
-		CustomGame(int w, int h, int m) {
-			width = w;
-			height = h;
-			mines = m;
+			getChildren().addAll(digit100th, digit10th, digit1th);
 		}
 
-		@Override
-		public int getWidth() {
-			return width;
+		private int getValue() {
+			return value;
 		}
 
-		@Override
-		public int getHeight() {
-			return height;
+		private void reset(int n) {
+			value = n;
+			setDigits();
 		}
 
-		@Override
-		public int getNMines() {
-			return mines;
+		private void tick() {
+			this.value++;
+			if (this.value > 999) {
+				this.value = 999;
+			}
+			this.setDigits();
 		}
 
-		@Override
-		public String getName() {
-			return "" + width + "x" + height + ": " + mines;
+		private void antiTick() {
+			this.value--;
+			if (this.value < 0) {
+				this.value = 0;
+			}
+			this.setDigits();
 		}
 
-		@Override
-		public scoreDifficulties getDifficulty() {
-			return scoreDifficulties.CUSTOM;
+		private void setDigits() {
+			if (this.value < 10) {
+				SpriteAtlas.show(digit1th, getDigitImage(this.value));
+				SpriteAtlas.show(digit10th, getDigitImage(0));
+				SpriteAtlas.show(digit100th, getDigitImage(0));
+			} else if (this.value < 100) {
+				SpriteAtlas.show(digit1th, getDigitImage(this.value.toString().charAt(1)));
+				SpriteAtlas.show(digit10th, getDigitImage(this.value.toString().charAt(0)));
+				SpriteAtlas.show(digit100th, getDigitImage(0));
+			} else if (this.value < 1000) {
+				SpriteAtlas.show(digit1th, getDigitImage(this.value.toString().charAt(2)));
+				SpriteAtlas.show(digit10th, getDigitImage(this.value.toString().charAt(1)));
+				SpriteAtlas.show(digit100th, getDigitImage(this.value.toString().charAt(0)));
+			}
 		}
 
 	}
@@ -0,0 +1,171 @@
+package minesweeper;
+
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Plays large numbers of games without a window and reports how a bot fares on
+ * each difficulty: games per second, win rate and how many guesses the games
+ * needed. Games are split into batches across every core on the common
+ * fork/join pool; each batch gets its own split of the random stream, so a run
+ * with the same seed plays the same boards whatever the number of cores.
+ * <p>
+ * Usage: {@code java minesweeper.MineSweeperSimulator [games] [bot] [seed] [WxH:M ...]}
+ * where bot is random, solver, probability or the name of a class implementing
+ * {@link Bot}. Without board sizes the beginner, intermediate and expert
+ * presets are played.
+ */
+public class MineSweeperSimulator {
+
+	private static final long DEFAULTGAMES = 100_000;
+	private static final String DEFAULTBOT = "solver";
+	private static final int BATCH = 1000;
+	// games needing this many guesses or more share the last bucket
+	private static final int GUESSBUCKETS = 10;
+
+	public static void main(String[] args) {
+		try {
+			long games = DEFAULTGAMES;
+			String bot = DEFAULTBOT;
+			long seed = new SplittableRandom().nextLong();
+			ArrayList<Difficulty> difficulties = new ArrayList<Difficulty>();
+
+			if (args.length > 0) {
+				games = parse("Games", args[0], 0, Long.MAX_VALUE);
+			}
+			if (args.length > 1) {
+				bot = args[1];
+				Bot.create(bot);
+			}
+			if (args.length > 2) {
+				seed = parse("Seed", args[2], Long.MIN_VALUE, Long.MAX_VALUE);
+			}
+			for (int i = 3; i < args.length; i++) {
+				difficulties.add(parseDifficulty(args[i]));
+			}
+			if (difficulties.isEmpty()) {
+				difficulties.add(new BeginnerGame());
+				difficulties.add(new IntermediateGame());
+				difficulties.add(new ExpertGame());
+			}
+
+			System.out.println("Playing " + games + " games per difficulty with the " + bot + " bot, seed " + seed);
+			for (Difficulty d : difficulties) {
+				report(d, simulate(d, bot, games, seed));
+			}
+		} catch (IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+		}
+	}
+
+	/** Reads a board size written as WxH:M */
+	private static Difficulty parseDifficulty(String arg) {
+		String[] parts = arg.split("[x:]");
+		if (parts.length != 3) {
+			throw new IllegalArgumentException("Board sizes are written as WxH:M");
+		}
+		int w = (int) parse("Width", parts[0], 1, Integer.MAX_VALUE);
+		int h = (int) parse("Height", parts[1], 1, Integer.MAX_VALUE / w);
+		int m = (int) parse("Mines", parts[2], 1, w * h - 1);
+		return new CustomGame(w, h, m);
+	}
+
+	/** Reads a whole number from min to max, or says what is wrong with it */
+	private static long parse(String name, String arg, long min, long max) {
+		long value;
+		try {
+			value = Long.parseLong(arg);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException(name + " must be a whole number, not " + arg);
+		}
+		if (value < min || value > max) {
+			throw new IllegalArgumentException(name + " must be between " + min + " and " + max);
+		}
+		return value;
+	}
+
+	static Stats simulate(Difficulty d, String bot, long games, long seed) {
+		long start = System.nanoTime();
+		Stats stats = ForkJoinPool.commonPool().invoke(new Batch(d, bot, games, new SplittableRandom(seed)));
+		stats.nanos = System.nanoTime() - start;
+		return stats;
+	}
+
+	private static void report(Difficulty d, Stats stats) {
+		if (stats.games == 0) {
+			System.out.println(d.getName() + ": no games played");
+			return;
+		}
+		double seconds = stats.nanos / 1e9;
+		System.out.printf("%s: %d games in %.2f s, %.0f games/s, win rate %.2f%%%n", d.getName(), stats.games,
+				seconds, stats.games / seconds, 100.0 * stats.wins / stats.games);
+
+		StringBuilder line = new StringBuilder("  guesses");
+		for (int i = 0; i < GUESSBUCKETS; i++) {
+			line.append(String.format(" %s%d: %.1f%%", (i == GUESSBUCKETS - 1) ? ">=" : "", i,
+					100.0 * stats.guesses[i] / stats.games));
+		}
+		System.out.println(line);
+	}
+
+	/** Totals for a number of games */
+	static class Stats {
+		private long games, wins, nanos;
+		private final long[] guesses = new long[GUESSBUCKETS];
+
+		private void add(BoardEngine board, int guessCount) {
+			games++;
+			if (board.getStatus() == BoardEngine.Status.WON) {
+				wins++;
+			}
+			guesses[Math.min(guessCount, GUESSBUCKETS - 1)]++;
+		}
+
+		private void merge(Stats other) {
+			games += other.games;
+			wins += other.wins;
+			for (int i = 0; i < GUESSBUCKETS; i++) {
+				guesses[i] += other.guesses[i];
+			}
+		}
+	}
+
+	/** Splits the games in half until a batch is small enough to play on one thread */
+	@SuppressWarnings("serial")
+	private static class Batch extends RecursiveTask<Stats> {
+		private final Difficulty difficulty;
+		private final String bot;
+		private final long games;
+		private final SplittableRandom random;
+
+		Batch(Difficulty difficulty, String bot, long games, SplittableRandom random) {
+			this.difficulty = difficulty;
+			this.bot = bot;
+			this.games = games;
+			this.random = random;
+		}
+
+		@Override
+		protected Stats compute() {
+			if (games > BATCH) {
+				Batch left = new Batch(difficulty, bot, games / 2, random.split());
+				Batch right = new Batch(difficulty, bot, games - games / 2, random.split());
+				left.fork();
+				Stats stats = right.compute();
+				stats.merge(left.join());
+				return stats;
+			}
+
+			Bot player = Bot.create(bot);
+			Stats stats = new Stats();
+			for (long i = 0; i < games; i++) {
+				BoardEngine board = new BoardEngine(difficulty.getWidth(), difficulty.getHeight(),
+						difficulty.getNMines(), random.nextLong());
+				stats.add(board, player.play(board, random));
+			}
+			return stats;
+		}
+	}
+}
@@ -0,0 +1,158 @@
+package minesweeper;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Finds boards that can be cleared from the first click without ever having to
+ * guess. Candidate boards are drawn from random seeds and played out by a
+ * {@link Solver}; the first one it clears wins. The search runs one worker per
+ * core on the common fork/join pool and gives up once its time budget is
+ * spent, in which case an ordinary random board is returned instead so the
+ * game can always start on time.
+ */
+public class NoGuessGenerator {
+
+	/** Long enough for expert boards, short enough not to be noticed */
+	public static final long DEFAULTBUDGET = 500;
+
+	// how many solver moves to make between checks of the deadline
+	private static final int CHECKINTERVAL = 256;
+
+	private final int width, height, nMines;
+	private final long budgetNanos;
+	private final Topology topology;
+
+	private boolean lastNoGuess;
+	private int lastCandidates;
+
+	public NoGuessGenerator(int width, int height, int nMines) {
+		this(width, height, nMines, DEFAULTBUDGET);
+	}
+
+	public NoGuessGenerator(int width, int height, int nMines, long budgetMillis) {
+		this(width, height, nMines, budgetMillis, Topology.SQUARE);
+	}
+
+	public NoGuessGenerator(int width, int height, int nMines, long budgetMillis, Topology topology) {
+		this.width = width;
+		this.height = height;
+		this.nMines = nMines;
+		this.budgetNanos = budgetMillis * 1_000_000L;
+		this.topology = topology;
+	}
+
+	/**
+	 * Returns a board with its mines placed for a first click at (fx, fy). The
+	 * board can be solved without guessing unless the budget ran out first
+	 */
+	public BoardEngine generate(int fx, int fy) {
+		Search search = new Search(fx, fy, System.nanoTime() + budgetNanos);
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		pool.invoke(new Worker(search, new SplittableRandom(), 0, pool.getParallelism()));
+
+		lastNoGuess = search.found.get();
+		lastCandidates = search.candidates.get();
+		long seed = lastNoGuess ? search.seed : new SplittableRandom().nextLong();
+
+		BoardEngine board = new BoardEngine(width, height, nMines, seed, topology);
+		board.generate(fx, fy);
+		return board;
+	}
+
+	/** True if the last board returned was proven to need no guesses */
+	public boolean isLastNoGuess() {
+		return lastNoGuess;
+	}
+
+	/** The number of candidate boards tried by the last search */
+	public int getLastCandidates() {
+		return lastCandidates;
+	}
+
+	/** True if the board from this seed can be cleared from (fx, fy) by the solver alone */
+	public boolean isSolvable(long seed, int fx, int fy) {
+		return solve(seed, fx, fy, Long.MAX_VALUE, null);
+	}
+
+	private boolean solve(long seed, int fx, int fy, long deadline, Search search) {
+		BoardEngine board = new BoardEngine(width, height, nMines, seed, topology);
+		Solver solver = new Solver(board);
+
+		board.reveal(fx, fy);
+		solver.update();
+
+		for (int moves = 1; !board.isGameOver(); moves++) {
+			int c = solver.nextSafe();
+			if (c < 0) {
+				return false;
+			}
+			board.reveal(c % width, c / width);
+			solver.update();
+
+			if (moves % CHECKINTERVAL == 0 && (System.nanoTime() > deadline || (search != null && search.isDone()))) {
+				return false;
+			}
+		}
+		return board.getStatus() == BoardEngine.Status.WON;
+	}
+
+	/** State shared by the workers of one search */
+	private static class Search {
+		private final int fx, fy;
+		private final long deadline;
+
+		// set once, by the first worker to find a board, which then writes its seed
+		private final AtomicBoolean found = new AtomicBoolean();
+		private volatile long seed;
+		private final AtomicInteger candidates = new AtomicInteger();
+
+		Search(int fx, int fy, long deadline) {
+			this.fx = fx;
+			this.fy = fy;
+			this.deadline = deadline;
+		}
+
+		private boolean isDone() {
+			return found.get() || System.nanoTime() > deadline;
+		}
+	}
+
+	/** Splits until there is one worker per core, each trying seeds from its own random stream */
+	@SuppressWarnings("serial")
+	private class Worker extends RecursiveAction {
+		private final Search search;
+		private final SplittableRandom random;
+		private final int from, to;
+
+		Worker(Search search, SplittableRandom random, int from, int to) {
+			this.search = search;
+			this.random = random;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > 1) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new Worker(search, random.split(), from, mid), new Worker(search, random.split(), mid, to));
+				return;
+			}
+
+			int tried = 0;
+			while (!search.isDone()) {
+				long seed = random.nextLong();
+				tried++;
+				if (solve(seed, search.fx, search.fy, search.deadline, search)
+						&& search.found.compareAndSet(false, true)) {
+					search.seed = seed;
+				}
+			}
+			search.candidates.addAndGet(tried);
+		}
+	}
+}
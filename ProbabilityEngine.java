@@ -0,0 +1,714 @@
+package minesweeper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Works out the chance that each hidden cell holds a mine, given the numbers
+ * revealed so far and the total number of mines on the board.
+ * <p>
+ * The hidden cells next to revealed numbers are split into components that
+ * share no numbers, so each can be counted on its own. A component's
+ * arrangements are counted by the number of mines they use; small components
+ * are enumerated exactly, and components too large to enumerate within a node
+ * limit are estimated by sequential importance sampling on every core until a
+ * time budget runs out. The components are then combined with the hidden cells
+ * that touch no number, weighting every total by the number of ways the
+ * leftover mines can be spread over those cells.
+ * <p>
+ * A component's counts only depend on its cells and the numbers around them,
+ * so they are kept between queries and reused until a move changes them.
+ * <p>
+ * A query works from a copy of the revealed numbers taken by {@link #capture()},
+ * so {@link #computeCaptured()} can run on another thread while the game goes
+ * on, and it fills a second array that only replaces the one
+ * {@link #getProbability(int, int)} reads once it is complete.
+ */
+public class ProbabilityEngine {
+
+	/** Probability reported for cells that have been revealed */
+	public static final float REVEALED = -1;
+
+	// a hidden cell in the captured numbers
+	private static final byte HIDDEN = -1;
+
+	public static final long DEFAULTBUDGET = 100;
+
+	// components with more cells than this are never enumerated
+	private static final int EXACTCELLS = 256;
+	// enumeration gives up and samples instead after visiting this many nodes
+	private static final long EXACTNODES = 1L << 22;
+
+	private final BoardEngine board;
+	private final int width, height;
+	private final Topology.Neighbours neighbours;
+	// the adjacent mines of each cell revealed when last captured, or HIDDEN
+	private final byte[] numbers;
+	private int numRevealed;
+	// the last complete answer, and the array the next query fills before they swap
+	private volatile float[] probabilities;
+	private float[] working;
+
+	private long budgetNanos = DEFAULTBUDGET * 1_000_000L;
+	private HashMap<Component, Counts> cache = new HashMap<Component, Counts>();
+
+	// per cell scratch space reused by every query
+	private final int[] stamp;
+	private final int[] localIndex;
+	private int query;
+
+	public ProbabilityEngine(BoardEngine board) {
+		this.board = board;
+		this.width = board.getWidth();
+		this.height = board.getHeight();
+		this.neighbours = board.getNeighbours();
+		this.numbers = new byte[width * height];
+		this.probabilities = new float[width * height];
+		this.working = new float[width * height];
+		// nothing is known until the first query
+		Arrays.fill(probabilities, REVEALED);
+		this.stamp = new int[width * height];
+		this.localIndex = new int[width * height];
+	}
+
+	/** How long sampling may run in each query, shared by all large components */
+	public void setTimeBudget(long millis) {
+		budgetNanos = millis * 1_000_000L;
+	}
+
+	/** The probability from the last complete query, or REVEALED */
+	public float getProbability(int x, int y) {
+		return probabilities[board.index(x, y)];
+	}
+
+	/**
+	 * Recomputes the probability of every cell. Returns the array indexed by
+	 * cell, which is reused by later calls
+	 */
+	public float[] compute() {
+		capture();
+		return computeCaptured();
+	}
+
+	/** Copies the revealed numbers off the board, on the thread that moves on it */
+	public void capture() {
+		numRevealed = board.getNumRevealed();
+		for (int c = 0; c < numbers.length; c++) {
+			numbers[c] = board.isRevealed(c) ? (byte) board.getAdjacentMines(c) : HIDDEN;
+		}
+	}
+
+	/**
+	 * Recomputes the probability of every cell from the numbers last captured,
+	 * on any thread as long as only one query runs at a time. Returns the array
+	 * indexed by cell, which is reused by later calls
+	 */
+	public float[] computeCaptured() {
+		query++;
+		ArrayList<Component> components = findComponents();
+
+		HashMap<Component, Counts> kept = new HashMap<Component, Counts>();
+		ArrayList<Component> sampled = new ArrayList<Component>();
+		Counts[] counts = new Counts[components.size()];
+
+		for (int i = 0; i < counts.length; i++) {
+			Component c = components.get(i);
+			counts[i] = cache.get(c);
+			if (counts[i] == null && c.cells.length <= EXACTCELLS) {
+				counts[i] = new Enumeration(c).run();
+			}
+			if (counts[i] == null) {
+				sampled.add(c);
+			} else {
+				kept.put(c, counts[i]);
+			}
+		}
+
+		long deadline = System.nanoTime() + budgetNanos;
+		for (int i = 0; i < counts.length; i++) {
+			if (counts[i] == null) {
+				long share = (deadline - System.nanoTime()) / sampled.size();
+				counts[i] = sample(components.get(i), System.nanoTime() + share);
+				sampled.remove(components.get(i));
+				kept.put(components.get(i), counts[i]);
+			}
+		}
+		cache = kept;
+
+		combine(components, counts);
+		float[] done = working;
+		working = probabilities;
+		probabilities = done;
+		return done;
+	}
+
+	/** Groups the hidden cells next to revealed numbers by the numbers they share */
+	private ArrayList<Component> findComponents() {
+		ArrayList<Component> components = new ArrayList<Component>();
+		IntList cells = new IntList();
+		IntList constraints = new IntList();
+
+		for (int c = 0; c < numbers.length; c++) {
+			if (stamp[c] != query && isFrontier(c)) {
+				cells.clear();
+				constraints.clear();
+				stamp[c] = query;
+				cells.add(c);
+
+				// breadth first through cells and the numbers touching them
+				for (int next = 0; next < cells.size(); next++) {
+					int cell = cells.get(next);
+					forNeighbours(cell, n -> {
+						if (stamp[n] != query && isConstraint(n)) {
+							stamp[n] = query;
+							constraints.add(n);
+							forNeighbours(n, m -> {
+								if (stamp[m] != query && !isRevealed(m)) {
+									stamp[m] = query;
+									cells.add(m);
+								}
+							});
+						}
+					});
+				}
+				components.add(new Component(cells.toArray(), constraints.toArray()));
+			}
+		}
+		return components;
+	}
+
+	private interface CellVisitor {
+		void visit(int cell);
+	}
+
+	private void forNeighbours(int c, CellVisitor visitor) {
+		int k = neighbours.kindOf(c);
+		for (int e = neighbours.start(k); e < neighbours.end(k); e++) {
+			visitor.visit(c + neighbours.delta(e));
+		}
+	}
+
+	private boolean isRevealed(int c) {
+		return numbers[c] != HIDDEN;
+	}
+
+	/** Revealed zeros count too, since a flag can keep a zero's neighbour hidden */
+	private boolean isConstraint(int c) {
+		return isRevealed(c);
+	}
+
+	private boolean isFrontier(int c) {
+		if (isRevealed(c)) {
+			return false;
+		}
+		int k = neighbours.kindOf(c);
+		for (int e = neighbours.start(k); e < neighbours.end(k); e++) {
+			if (isRevealed(c + neighbours.delta(e))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Combines the components' counts with the cells that touch no number. Each
+	 * component's counts are weighted by every way the other components and the
+	 * untouched cells can make up the rest of the mines.
+	 */
+	private void combine(ArrayList<Component> components, Counts[] counts) {
+		int hidden = numbers.length - numRevealed;
+		int interior = hidden;
+		int base = 0;
+		int spread = 0;
+		ArrayList<Integer> varying = new ArrayList<Integer>();
+		for (int i = 0; i < counts.length; i++) {
+			interior -= components.get(i).cells.length;
+			base += counts[i].lo;
+			if (counts[i].dist.length > 1) {
+				varying.add(i);
+				spread += counts[i].dist.length - 1;
+			}
+		}
+
+		// weight of a total of base + t frontier mines by the ways to place the rest
+		double[] weight = interiorWeights(interior, board.getNMines() - base, spread);
+
+		// prefix[i] is the mine distribution of the first i varying components
+		// and suffix[i] the weight of each total given the components from i on
+		int v = varying.size();
+		double[][] prefix = new double[v + 1][];
+		prefix[0] = new double[] { 1 };
+		for (int i = 0; i < v; i++) {
+			prefix[i + 1] = convolve(prefix[i], counts[varying.get(i)].dist);
+		}
+		double[][] suffix = new double[v + 1][];
+		suffix[v] = weight;
+		for (int i = v - 1; i >= 0; i--) {
+			double[] dist = counts[varying.get(i)].dist;
+			double[] next = suffix[i + 1];
+			double[] s = new double[next.length - dist.length + 1];
+			for (int t = 0; t < s.length; t++) {
+				for (int k = 0; k < dist.length; k++) {
+					s[t] += dist[k] * next[t + k];
+				}
+			}
+			suffix[i] = s;
+		}
+
+		double total = 0, interiorMines = 0;
+		double[] all = prefix[v];
+		for (int t = 0; t < all.length; t++) {
+			total += all[t] * weight[t];
+			interiorMines += all[t] * weight[t] * (board.getNMines() - base - t);
+		}
+
+		Arrays.fill(working, REVEALED);
+		float interiorProbability = (total > 0 && interior > 0) ? (float) (interiorMines / total / interior) : 0;
+		for (int c = 0; c < working.length; c++) {
+			if (!isRevealed(c)) {
+				working[c] = interiorProbability;
+			}
+		}
+
+		int next = 0;
+		for (int i = 0; i < counts.length; i++) {
+			Component component = components.get(i);
+			Counts count = counts[i];
+			double[] external;
+			if (next < v && varying.get(next) == i) {
+				external = new double[count.dist.length];
+				double[] before = prefix[next];
+				double[] after = suffix[next + 1];
+				for (int k = 0; k < external.length; k++) {
+					for (int t = 0; t < before.length; t++) {
+						external[k] += before[t] * after[t + k];
+					}
+				}
+				next++;
+			} else {
+				external = new double[] { 1 };
+			}
+
+			double norm = 0;
+			for (int k = 0; k < external.length; k++) {
+				norm += count.dist[k] * external[k];
+			}
+			for (int j = 0; j < component.cells.length; j++) {
+				double p = 0;
+				for (int k = 0; k < external.length; k++) {
+					if (count.cellDist[k] != null) {
+						p += count.cellDist[k][j] * external[k];
+					}
+				}
+				working[component.cells[j]] = (norm > 0) ? (float) (p / norm) : interiorProbability;
+			}
+		}
+	}
+
+	/**
+	 * The number of ways to put remaining - t mines in the interior cells for
+	 * each t up to spread, scaled so the largest is 1
+	 */
+	private static double[] interiorWeights(int interior, int remaining, int spread) {
+		double[] log = new double[spread + 1];
+		double max = Double.NEGATIVE_INFINITY;
+		for (int t = 0; t <= spread; t++) {
+			int r = remaining - t;
+			log[t] = (r < 0 || r > interior) ? Double.NEGATIVE_INFINITY : logChoose(interior, r);
+			max = Math.max(max, log[t]);
+		}
+		double[] weight = new double[spread + 1];
+		for (int t = 0; t <= spread; t++) {
+			weight[t] = (max == Double.NEGATIVE_INFINITY) ? 0 : Math.exp(log[t] - max);
+		}
+		return weight;
+	}
+
+	private static double logChoose(int n, int r) {
+		r = Math.min(r, n - r);
+		double log = 0;
+		for (int i = 0; i < r; i++) {
+			log += Math.log(n - i) - Math.log(i + 1);
+		}
+		return log;
+	}
+
+	private static double[] convolve(double[] a, double[] b) {
+		double[] c = new double[a.length + b.length - 1];
+		for (int i = 0; i < a.length; i++) {
+			for (int j = 0; j < b.length; j++) {
+				c[i + j] += a[i] * b[j];
+			}
+		}
+		return c;
+	}
+
+	/** Estimates a component's counts on every core until the deadline */
+	private Counts sample(Component component, long deadline) {
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		Tally tally = pool.invoke(new Sampler(component, new SplittableRandom(), deadline, pool.getParallelism()));
+		return tally.toCounts(component);
+	}
+
+	/** The hidden cells sharing a set of numbers, and those numbers */
+	private class Component {
+		private final int[] cells;
+		private final int[] constraints;
+
+		// what each number needs, and the numbers around each cell
+		private final int[] need;
+		private final int[] size;
+		private final int[][] cellConstraints;
+
+		Component(int[] cells, int[] constraints) {
+			this.cells = cells;
+			this.constraints = constraints;
+
+			for (int i = 0; i < cells.length; i++) {
+				localIndex[cells[i]] = i;
+			}
+
+			need = new int[constraints.length];
+			size = new int[constraints.length];
+			int[] perCell = new int[cells.length];
+			for (int k = 0; k < constraints.length; k++) {
+				int c = constraints[k];
+				need[k] = numbers[c];
+				forNeighbours(c, n -> {
+					if (!isRevealed(n)) {
+						perCell[localIndex[n]]++;
+					}
+				});
+			}
+
+			cellConstraints = new int[cells.length][];
+			for (int i = 0; i < cells.length; i++) {
+				cellConstraints[i] = new int[perCell[i]];
+				perCell[i] = 0;
+			}
+			for (int k = 0; k < constraints.length; k++) {
+				int con = k;
+				forNeighbours(constraints[k], n -> {
+					if (!isRevealed(n)) {
+						int i = localIndex[n];
+						cellConstraints[i][perCell[i]++] = con;
+						size[con]++;
+					}
+				});
+			}
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Component && Arrays.equals(cells, ((Component) o).cells)
+					&& Arrays.equals(constraints, ((Component) o).constraints);
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(cells) * 31 + Arrays.hashCode(constraints);
+		}
+	}
+
+	/**
+	 * How a component's arrangements split by mine count, from lo mines up:
+	 * dist[k] is the share using lo + k mines and cellDist[k][j] the share that
+	 * also has a mine on its j'th cell
+	 */
+	private static class Counts {
+		private final int lo;
+		private final double[] dist;
+		private final double[][] cellDist;
+
+		Counts(int lo, double[] dist, double[][] cellDist) {
+			this.lo = lo;
+			this.dist = dist;
+			this.cellDist = cellDist;
+		}
+	}
+
+	/**
+	 * Weighted arrangements gathered by enumeration or sampling, by mine count.
+	 * Weights are stored as multiples of 2^scale so very large components do not
+	 * overflow a double
+	 */
+	private static class Tally {
+		private final double[] weight;
+		private final double[][] cellWeight;
+		private int scale = Integer.MIN_VALUE;
+
+		Tally(int cells) {
+			weight = new double[cells + 1];
+			cellWeight = new double[cells + 1][];
+		}
+
+		private void add(int mines, int exponent, boolean[] mine) {
+			if (scale == Integer.MIN_VALUE) {
+				scale = exponent;
+			}
+			double w = Math.scalb(1.0, exponent - scale);
+			weight[mines] += w;
+			if (cellWeight[mines] == null) {
+				cellWeight[mines] = new double[mine.length];
+			}
+			double[] row = cellWeight[mines];
+			for (int j = 0; j < mine.length; j++) {
+				if (mine[j]) {
+					row[j] += w;
+				}
+			}
+		}
+
+		private void merge(Tally other) {
+			if (other.scale == Integer.MIN_VALUE) {
+				return;
+			}
+			if (scale == Integer.MIN_VALUE) {
+				scale = other.scale;
+			}
+			double factor = Math.scalb(1.0, other.scale - scale);
+			for (int k = 0; k < weight.length; k++) {
+				weight[k] += other.weight[k] * factor;
+				if (other.cellWeight[k] != null) {
+					if (cellWeight[k] == null) {
+						cellWeight[k] = new double[other.cellWeight[k].length];
+					}
+					for (int j = 0; j < cellWeight[k].length; j++) {
+						cellWeight[k][j] += other.cellWeight[k][j] * factor;
+					}
+				}
+			}
+		}
+
+		/** Normalises to shares of the total. With nothing gathered every cell is left undecided */
+		private Counts toCounts(Component component) {
+			int lo = 0, hi = weight.length - 1;
+			while (lo < hi && weight[lo] == 0) {
+				lo++;
+			}
+			while (hi > lo && weight[hi] == 0) {
+				hi--;
+			}
+			double total = 0;
+			for (int k = lo; k <= hi; k++) {
+				total += weight[k];
+			}
+			if (total == 0) {
+				// no arrangement was found in time, so let the component count for nothing
+				return new Counts(0, new double[] { 0 }, new double[1][]);
+			}
+
+			double[] dist = new double[hi - lo + 1];
+			double[][] cellDist = new double[hi - lo + 1][];
+			for (int k = lo; k <= hi; k++) {
+				dist[k - lo] = weight[k] / total;
+				if (cellWeight[k] != null) {
+					cellDist[k - lo] = new double[cellWeight[k].length];
+					for (int j = 0; j < cellWeight[k].length; j++) {
+						cellDist[k - lo][j] = cellWeight[k][j] / total;
+					}
+				}
+			}
+			return new Counts(lo, dist, cellDist);
+		}
+	}
+
+	/** Running totals for each number while cells are assigned in order */
+	private static class Assignment {
+		private final Component component;
+		private final int[] mines;
+		private final int[] open;
+		private final boolean[] mine;
+
+		Assignment(Component component) {
+			this.component = component;
+			this.mines = new int[component.need.length];
+			this.open = component.size.clone();
+			this.mine = new boolean[component.cells.length];
+		}
+
+		private void reset() {
+			Arrays.fill(mines, 0);
+			System.arraycopy(component.size, 0, open, 0, open.length);
+		}
+
+		private boolean canBeMine(int j) {
+			for (int k : component.cellConstraints[j]) {
+				if (mines[k] + 1 > component.need[k]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private boolean canBeSafe(int j) {
+			for (int k : component.cellConstraints[j]) {
+				if (mines[k] + open[k] - 1 < component.need[k]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private void set(int j, boolean isMine) {
+			mine[j] = isMine;
+			for (int k : component.cellConstraints[j]) {
+				open[k]--;
+				if (isMine) {
+					mines[k]++;
+				}
+			}
+		}
+
+		private void unset(int j) {
+			for (int k : component.cellConstraints[j]) {
+				open[k]++;
+				if (mine[j]) {
+					mines[k]--;
+				}
+			}
+			mine[j] = false;
+		}
+	}
+
+	/** Counts every arrangement of a component, unless there are too many to visit */
+	private static class Enumeration {
+		private final Assignment assignment;
+		private final Tally tally;
+		private long nodes;
+
+		Enumeration(Component component) {
+			assignment = new Assignment(component);
+			tally = new Tally(component.cells.length);
+		}
+
+		/** Returns the exact counts, or null if the node limit was reached */
+		private Counts run() {
+			if (!search(0, 0)) {
+				return null;
+			}
+			return tally.toCounts(assignment.component);
+		}
+
+		private boolean search(int j, int mines) {
+			if (++nodes > EXACTNODES) {
+				return false;
+			}
+			if (j == assignment.mine.length) {
+				tally.add(mines, 0, assignment.mine);
+				return true;
+			}
+			if (assignment.canBeMine(j)) {
+				assignment.set(j, true);
+				boolean finished = search(j + 1, mines + 1);
+				assignment.unset(j);
+				if (!finished) {
+					return false;
+				}
+			}
+			if (assignment.canBeSafe(j)) {
+				assignment.set(j, false);
+				boolean finished = search(j + 1, mines);
+				assignment.unset(j);
+				if (!finished) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Draws arrangements by assigning cells in order, picking at random whenever
+	 * both values are still possible. Each arrangement is weighted by the
+	 * inverse of its chance of being drawn, 2 to the number of random picks, so
+	 * the weighted tallies estimate the true counts. Splits until there is one
+	 * sampler per core.
+	 */
+	@SuppressWarnings("serial")
+	private static class Sampler extends RecursiveTask<Tally> {
+		private final Component component;
+		private final SplittableRandom random;
+		private final long deadline;
+		private final int workers;
+
+		Sampler(Component component, SplittableRandom random, long deadline, int workers) {
+			this.component = component;
+			this.random = random;
+			this.deadline = deadline;
+			this.workers = workers;
+		}
+
+		@Override
+		protected Tally compute() {
+			if (workers > 1) {
+				Sampler left = new Sampler(component, random.split(), deadline, workers / 2);
+				Sampler right = new Sampler(component, random.split(), deadline, workers - workers / 2);
+				left.fork();
+				Tally tally = right.compute();
+				tally.merge(left.join());
+				return tally;
+			}
+
+			Assignment assignment = new Assignment(component);
+			Tally tally = new Tally(component.cells.length);
+			do {
+				assignment.reset();
+				int mines = 0, exponent = 0;
+				boolean complete = true;
+				for (int j = 0; j < assignment.mine.length; j++) {
+					boolean mine = assignment.canBeMine(j);
+					boolean safe = assignment.canBeSafe(j);
+					if (mine && safe) {
+						exponent++;
+						mine = random.nextBoolean();
+					} else if (!mine && !safe) {
+						complete = false;
+						break;
+					}
+					assignment.set(j, mine);
+					if (mine) {
+						mines++;
+					}
+				}
+				if (complete) {
+					tally.add(mines, exponent, assignment.mine);
+				}
+			} while (System.nanoTime() < deadline);
+			return tally;
+		}
+	}
+
+	/** A growable list of ints */
+	private static class IntList {
+		private int[] values = new int[16];
+		private int size;
+
+		private void add(int v) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = v;
+		}
+
+		private int get(int i) {
+			return values[i];
+		}
+
+		private int size() {
+			return size;
+		}
+
+		private void clear() {
+			size = 0;
+		}
+
+		private int[] toArray() {
+			return Arrays.copyOf(values, size);
+		}
+	}
+}
@@ -0,0 +1,260 @@
+package minesweeper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * The record of one game: the board's size and seed and every input the
+ * player made. Since a board is fully decided by its seed and the first
+ * click, replaying the inputs on a fresh {@link BoardEngine} gives back the
+ * same game.
+ * <p>
+ * Each input is stored as two varints, the change in cell index from the
+ * previous input shifted left past a 2 bit button, and the milliseconds since
+ * the previous input. Most inputs fit in three or four bytes. Recording
+ * writes into a byte array that only grows when it fills up, so a click does
+ * not allocate. A file is laid out as
+ *
+ * <pre>
+ * int magic "MSRP", short version, int width, int height, int mines,
+ * long seed, int inputs, int bytes, the input bytes, int crc32
+ * </pre>
+ *
+ * The checksum covers the header as well as the inputs, so a damaged size or
+ * seed is noticed instead of replaying the inputs on another board.
+ */
+public final class Replay {
+
+	public static final int REVEAL = 0;
+	public static final int FLAG = 1;
+	public static final int CHORD = 2;
+
+	private static final int MAGIC = 0x4D535250;
+	private static final short VERSION = 1;
+	private static final int HEADER = 4 + 2 + 4 + 4 + 4 + 8 + 4 + 4;
+	private static final int INITIALBYTES = 1024;
+	// the longest an input can be: a 34 bit code and a 64 bit gap
+	private static final int MAXINPUTBYTES = 5 + 10;
+
+	private final int width, height, nMines;
+	private long seed;
+
+	private byte[] data;
+	private int length, count;
+
+	// state of the recorder, used to encode the next input
+	private int lastCell;
+	private long startNanos, lastMillis;
+
+	/** An empty replay, ready to record a game on a board of this size */
+	public Replay(int width, int height, int nMines) {
+		this(width, height, nMines, 0, new byte[INITIALBYTES], 0, 0);
+	}
+
+	private Replay(int width, int height, int nMines, long seed, byte[] data, int length, int count) {
+		this.width = width;
+		this.height = height;
+		this.nMines = nMines;
+		this.seed = seed;
+		this.data = data;
+		this.length = length;
+		this.count = count;
+		this.startNanos = System.nanoTime();
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getNMines() {
+		return nMines;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	/** Sets the seed of the board the inputs were made on, once it is known */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/** The number of inputs recorded */
+	public int getCount() {
+		return count;
+	}
+
+	/** The size of the encoded inputs in bytes */
+	public int getLength() {
+		return length;
+	}
+
+	/** Records an input made now */
+	public void record(int cell, int button) {
+		long millis = (System.nanoTime() - startNanos) / 1_000_000;
+		record(cell, button, millis - lastMillis);
+		lastMillis = millis;
+	}
+
+	/** Records an input made the given number of milliseconds after the last one */
+	public void record(int cell, int button, long gapMillis) {
+		if (length + MAXINPUTBYTES > data.length) {
+			data = Arrays.copyOf(data, data.length * 2);
+		}
+		int delta = cell - lastCell;
+		int zigzag = (delta << 1) ^ (delta >> 31);
+		putVarint((zigzag & 0xFFFFFFFFL) << 2 | button);
+		putVarint(gapMillis);
+		lastCell = cell;
+		count++;
+	}
+
+	/** Forgets the inputs recorded so far, without restarting the clock */
+	public void clear() {
+		length = 0;
+		count = 0;
+		lastCell = 0;
+	}
+
+	/** Reads the inputs back in order */
+	public Cursor cursor() {
+		return new Cursor();
+	}
+
+	public void write(String fileName) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER);
+		header.putInt(MAGIC).putShort(VERSION).putInt(width).putInt(height).putInt(nMines).putLong(seed)
+				.putInt(count).putInt(length);
+		try (DataOutputStream output = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(fileName)))) {
+			output.write(header.array());
+			output.write(data, 0, length);
+			output.writeInt(checksum(header.array(), data, length));
+		}
+	}
+
+	public static Replay read(String fileName) throws IOException {
+		long size = Files.size(Paths.get(fileName));
+		try (InputStream input = new BufferedInputStream(new FileInputStream(fileName))) {
+			return read(input, fileName, size);
+		}
+	}
+
+	/** Reads a replay from a stream, which is left open */
+	public static Replay read(InputStream stream, String name) throws IOException {
+		return read(stream, name, Long.MAX_VALUE);
+	}
+
+	/** Reads a replay from a stream holding at most the given number of bytes */
+	private static Replay read(InputStream stream, String name, long size) throws IOException {
+		DataInputStream input = new DataInputStream(stream);
+		byte[] bytes = input.readNBytes(HEADER);
+		ByteBuffer header = ByteBuffer.wrap(bytes);
+		if (bytes.length < 4 || header.getInt() != MAGIC) {
+			throw new IOException(name + " is not a replay");
+		}
+		if (bytes.length != HEADER) {
+			throw new IOException(name + " ended early");
+		}
+		if (header.getShort() > VERSION) {
+			throw new IOException(name + " was recorded by a newer version");
+		}
+		int width = header.getInt();
+		int height = header.getInt();
+		int nMines = header.getInt();
+		long seed = header.getLong();
+		int count = header.getInt();
+		int length = header.getInt();
+		// the same limits as a board, which would otherwise throw while the game is replayed
+		if (width < 1 || height < 1 || (long) width * height > Integer.MAX_VALUE || nMines < 0
+				|| nMines >= width * height || count < 0 || length < 0 || length > size
+				|| length > (long) count * MAXINPUTBYTES) {
+			throw new IOException(name + " is damaged");
+		}
+		// read in pieces, so a damaged length cannot allocate more than the stream holds
+		byte[] data = input.readNBytes(length);
+		if (data.length != length) {
+			throw new IOException(name + " ended early");
+		}
+		if (input.readInt() != checksum(bytes, data, length)) {
+			throw new IOException(name + " failed its checksum");
+		}
+		return new Replay(width, height, nMines, seed, data, length, count);
+	}
+
+	private void putVarint(long value) {
+		while ((value & ~0x7FL) != 0) {
+			data[length++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		data[length++] = (byte) value;
+	}
+
+	private static int checksum(byte[] header, byte[] data, int length) {
+		CRC32 crc = new CRC32();
+		crc.update(header);
+		crc.update(data, 0, length);
+		return (int) crc.getValue();
+	}
+
+	/** Steps through the recorded inputs, decoding each in place */
+	public final class Cursor {
+		private int position, cell, button;
+		private long gap;
+
+		private Cursor() {
+		}
+
+		/** Moves to the next input, returning false once there are none left */
+		public boolean next() {
+			if (position >= length) {
+				return false;
+			}
+			long code = getVarint();
+			gap = getVarint();
+			int zigzag = (int) (code >>> 2);
+			cell += (zigzag >>> 1) ^ -(zigzag & 1);
+			button = (int) (code & 3);
+			return true;
+		}
+
+		public int getCell() {
+			return cell;
+		}
+
+		public int getButton() {
+			return button;
+		}
+
+		/** Milliseconds since the previous input */
+		public long getGap() {
+			return gap;
+		}
+
+		private long getVarint() {
+			long value = 0;
+			for (int shift = 0;; shift += 7) {
+				byte b = data[position++];
+				value |= (long) (b & 0x7F) << shift;
+				if (b >= 0) {
+					return value;
+				}
+			}
+		}
+	}
+}
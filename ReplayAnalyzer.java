@@ -0,0 +1,253 @@
+package minesweeper;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Reads a folder of replays and works out where players spend their time. Each
+ * replay is played back untimed to find its board, and scored by its 3BV (the
+ * fewest clicks that could clear the board), the clicks the player used per
+ * 3BV, their efficiency (3BV per click) and the time they took per revealed
+ * cell. Totals are kept for each difficulty and written to one summary file
+ * per difficulty.
+ * <p>
+ * The folder is listed in batches of names, each handed to the common
+ * fork/join pool as soon as it is full while the listing goes on. Only a few
+ * batches per core are waiting at any time and the replays themselves are
+ * read one at a time by each worker, so memory does not grow with the number
+ * of files. A file that cannot be read or played back is skipped, and counted
+ * as rejected.
+ * <p>
+ * Usage: {@code java minesweeper.ReplayAnalyzer [replay folder] [summary folder]}
+ * where both default to replays.
+ */
+public class ReplayAnalyzer {
+
+	private static final String DEFAULTFOLDER = "replays";
+	private static final String SUFFIX = ".msr";
+	private static final int BATCH = 64;
+	private static final Difficulty[] PRESETS = { new BeginnerGame(), new IntermediateGame(), new ExpertGame() };
+
+	public static void main(String[] args) {
+		Path folder = Paths.get(args.length > 0 ? args[0] : DEFAULTFOLDER);
+		Path output = (args.length > 1) ? Paths.get(args[1]) : folder;
+		try {
+			long start = System.nanoTime();
+			LongAdder rejected = new LongAdder();
+			TreeMap<String, Stats> stats = analyze(folder, rejected);
+			double seconds = (System.nanoTime() - start) / 1e9;
+
+			Files.createDirectories(output);
+			long games = 0;
+			for (Map.Entry<String, Stats> entry : stats.entrySet()) {
+				Path summary = output.resolve("summary-" + entry.getKey() + ".txt");
+				try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(summary))) {
+					entry.getValue().write(entry.getKey(), writer);
+				}
+				entry.getValue().write(entry.getKey(), new PrintWriter(System.out, true));
+				games += entry.getValue().games;
+			}
+			System.out.printf("%d replays in %.2f s, %.0f replays/s, %d files rejected%n", games, seconds,
+					games / seconds, rejected.sum());
+		} catch (IOException e) {
+			System.out.println(e.getMessage());
+		}
+	}
+
+	/** The totals of every replay in a folder, by difficulty, adding the files that were skipped to rejected */
+	static TreeMap<String, Stats> analyze(Path folder, LongAdder rejected) throws IOException {
+		TreeMap<String, Stats> stats = new TreeMap<String, Stats>();
+		ArrayDeque<Batch> waiting = new ArrayDeque<Batch>();
+		int maxWaiting = 2 * ForkJoinPool.getCommonPoolParallelism();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder, "*" + SUFFIX)) {
+			Path[] files = new Path[BATCH];
+			int size = 0;
+			for (Path file : stream) {
+				files[size++] = file;
+				if (size == BATCH) {
+					if (waiting.size() == maxWaiting) {
+						merge(stats, waiting.remove().join());
+					}
+					waiting.add(start(files, size, rejected));
+					files = new Path[BATCH];
+					size = 0;
+				}
+			}
+			if (size > 0) {
+				waiting.add(start(files, size, rejected));
+			}
+		}
+		while (!waiting.isEmpty()) {
+			merge(stats, waiting.remove().join());
+		}
+		return stats;
+	}
+
+	private static Batch start(Path[] files, int size, LongAdder rejected) {
+		Batch batch = new Batch(files, size, rejected);
+		ForkJoinPool.commonPool().execute(batch);
+		return batch;
+	}
+
+	private static void merge(TreeMap<String, Stats> stats, TreeMap<String, Stats> batch) {
+		for (Map.Entry<String, Stats> entry : batch.entrySet()) {
+			stats.computeIfAbsent(entry.getKey(), k -> new Stats()).merge(entry.getValue());
+		}
+	}
+
+	/**
+	 * The 3BV of a generated board: one click for every opening, that is every
+	 * connected region of zeros together with the numbers around it, plus one
+	 * for every other safe cell. The zeros and the cells outside every opening
+	 * are found a word at a time with bitboards; only the zeros are walked
+	 * cell by cell, to tell the openings apart
+	 */
+	static int bbbv(BoardEngine board) {
+		int w = board.getWidth();
+		int h = board.getHeight();
+		Bitboard mines = board.mineBits();
+		Bitboard zeros = mines.countEquals(0).andNot(mines);
+		int clicks = mines.not().andNot(zeros).andNot(zeros.around()).cardinality();
+
+		// x and y of each zero waiting to be spread from, in pairs
+		int[] stack = new int[64];
+		for (int c = zeros.nextSetBit(0); c >= 0; c = zeros.nextSetBit(c)) {
+			clicks++;
+			zeros.clear(c);
+			int size = 0;
+			stack[size++] = c % w;
+			stack[size++] = c / w;
+			while (size > 0) {
+				int zy = stack[--size];
+				int zx = stack[--size];
+				for (int j = ((zy == 0) ? 0 : -1); j <= ((zy == h - 1) ? 0 : 1); j++) {
+					for (int i = ((zx == 0) ? 0 : -1); i <= ((zx == w - 1) ? 0 : 1); i++) {
+						if (zeros.get(zx + i, zy + j)) {
+							zeros.clear(zx + i, zy + j);
+							if (size == stack.length) {
+								stack = Arrays.copyOf(stack, size * 2);
+							}
+							stack[size++] = zx + i;
+							stack[size++] = zy + j;
+						}
+					}
+				}
+			}
+		}
+		return clicks;
+	}
+
+	/** The name a board size is summarised under */
+	private static String difficultyName(Replay replay) {
+		for (Difficulty d : PRESETS) {
+			if (d.getWidth() == replay.getWidth() && d.getHeight() == replay.getHeight()
+					&& d.getNMines() == replay.getNMines()) {
+				return d.getName().toLowerCase();
+			}
+		}
+		return "custom";
+	}
+
+	/** Totals for a number of replays of one difficulty */
+	static class Stats {
+		private long games, wins, bbbv, clicks, millis;
+		private double clicksPerBbbv, efficiency, millisPerCell, bbbvPerSecond;
+
+		private void add(Replay replay, ReplayPlayer player) {
+			BoardEngine board = player.getBoard();
+			if (!board.isGenerated()) {
+				// nothing was ever revealed, so there is no board to score
+				return;
+			}
+			int boardBbbv = bbbv(board);
+			long elapsed = player.getElapsedMillis();
+
+			games++;
+			bbbv += boardBbbv;
+			clicks += replay.getCount();
+			millis += elapsed;
+			millisPerCell += elapsed / (double) board.getNumRevealed();
+			if (board.getStatus() == BoardEngine.Status.WON) {
+				// a lost game did not need its whole 3BV, so the ratios only count wins
+				wins++;
+				clicksPerBbbv += replay.getCount() / (double) boardBbbv;
+				efficiency += boardBbbv / (double) replay.getCount();
+				bbbvPerSecond += boardBbbv / Math.max(0.001, elapsed / 1000.0);
+			}
+		}
+
+		private void merge(Stats other) {
+			games += other.games;
+			wins += other.wins;
+			bbbv += other.bbbv;
+			clicks += other.clicks;
+			millis += other.millis;
+			clicksPerBbbv += other.clicksPerBbbv;
+			efficiency += other.efficiency;
+			millisPerCell += other.millisPerCell;
+			bbbvPerSecond += other.bbbvPerSecond;
+		}
+
+		private void write(String name, PrintWriter writer) {
+			writer.printf("%s: %d games, %d won (%.2f%%)%n", name, games, wins, 100.0 * wins / Math.max(1, games));
+			writer.printf("  mean 3BV           %.2f%n", bbbv / (double) Math.max(1, games));
+			writer.printf("  mean clicks        %.2f%n", clicks / (double) Math.max(1, games));
+			writer.printf("  ms per cell        %.1f%n", millisPerCell / Math.max(1, games));
+			writer.printf("  mean time          %.2f s%n", millis / 1000.0 / Math.max(1, games));
+			writer.printf("  when won:%n");
+			writer.printf("  clicks per 3BV     %.3f%n", clicksPerBbbv / Math.max(1, wins));
+			writer.printf("  efficiency         %.2f%%%n", 100.0 * efficiency / Math.max(1, wins));
+			writer.printf("  3BV/s              %.3f%n", bbbvPerSecond / Math.max(1, wins));
+			writer.flush();
+		}
+	}
+
+	/** The replays of one batch of files, read on one thread */
+	@SuppressWarnings("serial")
+	private static class Batch extends RecursiveTask<TreeMap<String, Stats>> {
+		private final Path[] files;
+		private final int size;
+		private final LongAdder rejected;
+
+		Batch(Path[] files, int size, LongAdder rejected) {
+			this.files = files;
+			this.size = size;
+			this.rejected = rejected;
+		}
+
+		@Override
+		protected TreeMap<String, Stats> compute() {
+			TreeMap<String, Stats> stats = new TreeMap<String, Stats>();
+			for (int i = 0; i < size; i++) {
+				try {
+					Replay replay = Replay.read(files[i].toString());
+					ReplayPlayer player = new ReplayPlayer(replay, ReplayPlayer.UNTIMED);
+					player.play();
+					stats.computeIfAbsent(difficultyName(replay), k -> new Stats()).add(replay, player);
+				} catch (IOException e) {
+					System.out.println(e.getMessage());
+					rejected.increment();
+				} catch (RuntimeException e) {
+					// a file that passed its checks but still names a board that cannot be built
+					System.out.println(files[i] + " could not be played back: " + e);
+					rejected.increment();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+			return stats;
+		}
+	}
+}
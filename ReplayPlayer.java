@@ -0,0 +1,121 @@
+package minesweeper;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plays a {@link Replay} back through the game rules on a fresh board, either
+ * in real time, at a multiple of it, or as fast as the CPU allows. The result
+ * shows whether the recorded inputs really win the game and what the game
+ * clock would have read, which is how a disputed high score is checked.
+ * <p>
+ * Usage: {@code java minesweeper.ReplayPlayer [speed|max] file ...} where
+ * speed is a multiple of real time such as 1 or 8. The default is max.
+ */
+public class ReplayPlayer {
+
+	/** Plays every input straight after the last one */
+	public static final double UNTIMED = 0;
+
+	private final Replay replay;
+	private final double speed;
+
+	private BoardEngine board;
+	// when the game clock started and when the last input was made, since the first input
+	private long clockStartMillis, lastMillis;
+
+	/** A player for the replay at the given multiple of real time, or {@link #UNTIMED} */
+	public ReplayPlayer(Replay replay, double speed) {
+		if (speed < 0 || Double.isNaN(speed)) {
+			throw new IllegalArgumentException("Speed must be positive");
+		}
+		this.replay = replay;
+		this.speed = Double.isInfinite(speed) ? UNTIMED : speed;
+	}
+
+	public static void main(String[] args) {
+		try {
+			double speed = UNTIMED;
+			int first = 0;
+			if (args.length > 0 && (args[0].equals("max") || args[0].matches("[0-9.]+"))) {
+				speed = args[0].equals("max") ? UNTIMED : Double.parseDouble(args[0]);
+				first = 1;
+			}
+			if (first == args.length) {
+				System.out.println("Usage: ReplayPlayer [speed|max] file ...");
+			}
+
+			for (int i = first; i < args.length; i++) {
+				Replay replay = Replay.read(args[i]);
+				ReplayPlayer player = new ReplayPlayer(replay, speed);
+				long start = System.nanoTime();
+				BoardEngine board = player.play();
+				long nanos = System.nanoTime() - start;
+
+				System.out.printf("%s: %dx%d:%d seed %d, %s, clock %d s, %d inputs in %d bytes, replayed in %.3f ms%n",
+						args[i], replay.getWidth(), replay.getHeight(), replay.getNMines(), replay.getSeed(),
+						board.getStatus().toString().toLowerCase(), player.getClock(), replay.getCount(),
+						replay.getLength(), nanos / 1e6);
+			}
+		} catch (IOException | IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/** Applies every input to a new board and returns the board as the replay left it */
+	public BoardEngine play() throws InterruptedException {
+		board = new BoardEngine(replay.getWidth(), replay.getHeight(), replay.getNMines(), replay.getSeed());
+		clockStartMillis = -1;
+		lastMillis = 0;
+
+		int w = board.getWidth();
+		long start = System.nanoTime();
+		Replay.Cursor cursor = replay.cursor();
+		while (cursor.next()) {
+			lastMillis += cursor.getGap();
+			if (speed != UNTIMED) {
+				long wait = start + (long) (lastMillis * 1_000_000 / speed) - System.nanoTime();
+				if (wait > 0) {
+					TimeUnit.NANOSECONDS.sleep(wait);
+				}
+			}
+
+			int x = cursor.getCell() % w;
+			int y = cursor.getCell() / w;
+			switch (cursor.getButton()) {
+			case Replay.REVEAL:
+				if (clockStartMillis < 0) {
+					clockStartMillis = lastMillis;
+				}
+				board.reveal(x, y);
+				break;
+			case Replay.FLAG:
+				board.toggleFlag(x, y);
+				break;
+			case Replay.CHORD:
+				board.chord(x, y);
+				break;
+			default:
+				break;
+			}
+		}
+		return board;
+	}
+
+	/** The board as the last call to {@link #play()} left it */
+	public BoardEngine getBoard() {
+		return board;
+	}
+
+	/** Milliseconds from the first click that started the clock to the last input */
+	public long getElapsedMillis() {
+		return (clockStartMillis < 0) ? 0 : lastMillis - clockStartMillis;
+	}
+
+	/** The seconds the game clock would have shown at the last input, as high scores record */
+	public int getClock() {
+		return (int) Math.min(999, getElapsedMillis() / 1000);
+	}
+}
@@ -0,0 +1,229 @@
+package minesweeper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.BitSet;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A game in progress, saved so it can be picked up again later. The board is
+ * stored as bit planes: two bits per cell for what the player can see, and
+ * one bit per cell for the mines. The planes are deflated, which shrinks the
+ * long runs of hidden or revealed cells of a big board to very little. The
+ * mine plane is left out when the mines were placed from the seed, since the
+ * seed and the first click place them again exactly. A file is laid out as
+ *
+ * <pre>
+ * int magic "MSSV", short version, byte difficulty, byte topology, int width, int height,
+ * int mines, long seed, int first click or -1, int elapsed seconds,
+ * int crc32 of the header before it and of the planes, the deflated planes
+ * </pre>
+ */
+final class SavedGame {
+
+	private static final int MAGIC = 0x4D535356;
+	private static final short VERSION = 1;
+	// everything before the checksum
+	private static final int HEADER = 4 + 2 + 1 + 1 + 4 + 4 + 4 + 8 + 4 + 4;
+
+	// what the player can see of a cell, two bits each
+	private static final int HIDDEN = 0;
+	private static final int REVEALED = 1;
+	private static final int FLAGGED = 2;
+	private static final int EXPLODED = 3;
+	private static final int BUFFER = 1 << 16;
+	// deflate shrinks nothing by more than about a thousand to one
+	private static final int MAXRATIO = 1032;
+
+	private final Difficulty difficulty;
+	private final BoardEngine board;
+	private final int elapsed;
+
+	SavedGame(Difficulty difficulty, BoardEngine board, int elapsed) {
+		if (!board.isGenerated()) {
+			throw new IllegalArgumentException("Only a game that has started can be saved");
+		}
+		if (board.getTopology().getId() < 0) {
+			throw new IllegalArgumentException("Only games on a built in topology can be saved");
+		}
+		this.difficulty = difficulty;
+		this.board = board;
+		this.elapsed = elapsed;
+	}
+
+	Difficulty getDifficulty() {
+		return difficulty;
+	}
+
+	BoardEngine getBoard() {
+		return board;
+	}
+
+	/** Seconds on the game clock when it was saved */
+	int getElapsed() {
+		return elapsed;
+	}
+
+	void write(String fileName) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER);
+		header.putInt(MAGIC).putShort(VERSION).put((byte) difficulty.getDifficulty().ordinal())
+				.put((byte) board.getTopology().getId()).putInt(board.getWidth()).putInt(board.getHeight())
+				.putInt(board.getNMines()).putLong(board.getSeed()).putInt(board.getFirstClick()).putInt(elapsed);
+		byte[] planes = pack(board);
+		CRC32 crc = new CRC32();
+		crc.update(header.array());
+		crc.update(planes);
+
+		try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)))) {
+			output.write(header.array());
+			output.writeInt((int) crc.getValue());
+
+			Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+			try {
+				DeflaterOutputStream deflated = new DeflaterOutputStream(output, deflater, BUFFER);
+				deflated.write(planes);
+				deflated.finish();
+			} finally {
+				deflater.end();
+			}
+		}
+	}
+
+	static SavedGame read(String fileName) throws IOException {
+		long fileSize = Files.size(Paths.get(fileName));
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName)))) {
+			byte[] bytes = input.readNBytes(HEADER);
+			ByteBuffer header = ByteBuffer.wrap(bytes);
+			if (bytes.length < 4 || header.getInt() != MAGIC) {
+				throw new IOException(fileName + " is not a saved game");
+			}
+			if (bytes.length != HEADER) {
+				throw new IOException(fileName + " ended early");
+			}
+			if (header.getShort() > VERSION) {
+				throw new IOException(fileName + " was saved by a newer version");
+			}
+			int type = header.get() & 0xFF;
+			Topology topology = Topology.byId(header.get() & 0xFF);
+			int width = header.getInt();
+			int height = header.getInt();
+			int nMines = header.getInt();
+			long seed = header.getLong();
+			int firstClick = header.getInt();
+			int elapsed = header.getInt();
+			int checksum = input.readInt();
+			if (type >= ScoreDifficulty.values().length || topology == null || width < 1 || height < 1
+					|| (long) width * height > Integer.MAX_VALUE || firstClick < -1 || firstClick >= width * height) {
+				throw new IOException(fileName + " is damaged");
+			}
+			// a preset is only ever saved at its own size
+			Difficulty difficulty = difficulty(ScoreDifficulty.values()[type], width, height, nMines);
+			if (difficulty.getWidth() != width || difficulty.getHeight() != height
+					|| difficulty.getNMines() != nMines) {
+				throw new IOException(fileName + " is damaged");
+			}
+
+			int cells = width * height;
+			int size = planeBytes(cells, 2) + ((firstClick < 0) ? planeBytes(cells, 1) : 0);
+			if (size > fileSize * MAXRATIO) {
+				throw new IOException(fileName + " is damaged");
+			}
+			// read in pieces, so a damaged size cannot allocate more than the file holds
+			Inflater inflater = new Inflater();
+			byte[] planes;
+			try {
+				planes = new InflaterInputStream(input, inflater, BUFFER).readNBytes(size);
+			} finally {
+				inflater.end();
+			}
+			if (planes.length != size) {
+				throw new IOException(fileName + " ended early");
+			}
+			CRC32 crc = new CRC32();
+			crc.update(bytes);
+			crc.update(planes);
+			if ((int) crc.getValue() != checksum) {
+				throw new IOException(fileName + " failed its checksum");
+			}
+
+			BoardEngine board;
+			try {
+				board = unpack(planes, width, height, nMines, seed, firstClick, topology);
+			} catch (IllegalArgumentException e) {
+				throw new IOException(fileName + " is damaged: " + e.getMessage());
+			}
+			return new SavedGame(difficulty, board, elapsed);
+		}
+	}
+
+	/** The state plane followed by the mine plane if it is needed, packed low bit first */
+	private static byte[] pack(BoardEngine board) {
+		int cells = board.getWidth() * board.getHeight();
+		int mineOffset = planeBytes(cells, 2);
+		boolean mines = board.getFirstClick() < 0;
+		byte[] planes = new byte[mineOffset + (mines ? planeBytes(cells, 1) : 0)];
+
+		for (int c = 0; c < cells; c++) {
+			int state = HIDDEN;
+			if (board.isRevealed(c)) {
+				state = REVEALED;
+			} else if (board.isFlagged(c)) {
+				state = FLAGGED;
+			}
+			planes[c >>> 2] |= state << ((c & 3) * 2);
+			if (mines && board.hasMine(c)) {
+				planes[mineOffset + (c >>> 3)] |= 1 << (c & 7);
+			}
+		}
+		// the mine that ended the game is the one revealed mine, and is never flagged
+		int exploded = board.getExplodedCell();
+		if (exploded >= 0) {
+			planes[exploded >>> 2] |= EXPLODED << ((exploded & 3) * 2);
+		}
+		return planes;
+	}
+
+	private static BoardEngine unpack(byte[] planes, int width, int height, int nMines, long seed, int firstClick,
+			Topology topology) {
+		int cells = width * height;
+		BoardEngine board = new BoardEngine(width, height, nMines, seed, topology);
+		if (firstClick >= 0) {
+			board.generate(firstClick % width, firstClick / width);
+		} else {
+			int mineOffset = planeBytes(cells, 2);
+			board.restoreMines(BitSet.valueOf(ByteBuffer.wrap(planes, mineOffset, planes.length - mineOffset)));
+		}
+
+		board.restoreCells(planes);
+		return board;
+	}
+
+	private static int planeBytes(int cells, int bits) {
+		return (int) (((long) cells * bits + 7) / 8);
+	}
+
+	private static Difficulty difficulty(ScoreDifficulty type, int width, int height, int nMines) {
+		switch (type) {
+		case BEGINNER:
+			return new BeginnerGame();
+		case INTERMEDIATE:
+			return new IntermediateGame();
+		case EXPERT:
+			return new ExpertGame();
+		default:
+			return new CustomGame(width, height, nMines);
+		}
+	}
+}
@@ -0,0 +1,6 @@
+package minesweeper;
+
+/** The score table a game counts towards */
+enum ScoreDifficulty {
+	BEGINNER, INTERMEDIATE, EXPERT, CUSTOM, INFINITE
+}
@@ -0,0 +1,229 @@
+package minesweeper;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Reads and writes score files. A file is a 16 byte header followed by fixed
+ * size records:
+ *
+ * <pre>
+ * header  int magic "MSHS", int crc32, short version, short record size, int count
+ * record  byte length, 63 bytes name, byte length, 15 bytes difficulty, int time,
+ *         int width, int height, int mines
+ * </pre>
+ *
+ * A file may hold the scores of many board sizes. They are stored grouped by
+ * size, smallest key first, and best time first within each size.
+ *
+ * The checksum covers everything after itself, so a torn or damaged file is
+ * noticed and ignored instead of being read as scores. A file is never
+ * written in place: the new scores go to a temporary file which is then
+ * renamed over the old one, all while holding a lock on a file next to it so
+ * several games can share one scores directory. Files written before the
+ * header existed are still read, and are replaced on the next write.
+ */
+final class ScoreFile {
+
+	static final int MAGIC = 0x4D534853;
+	static final short VERSION = 1;
+	static final int HEADER = 16;
+
+	private static final int NAMEBYTES = 63;
+	private static final int DIFFICULTYBYTES = 15;
+	static final int RECORD = 1 + NAMEBYTES + 1 + DIFFICULTYBYTES + 4 + 12;
+
+	// offsets into the header
+	private static final int CRC = 4;
+	private static final int CHECKED = 8;
+	private static final int RECORDSIZE = 10;
+	private static final int COUNT = 12;
+
+	/** Far more than the scores of every board ever played, so anything larger is not read */
+	private static final int MAXSIZE = 1 << 24;
+
+	private ScoreFile() {
+	}
+
+	/**
+	 * Reads every score in the file into the list. A missing or damaged file has
+	 * no scores. The file is read into the heap rather than mapped, since a
+	 * mapping stays open until it is collected and Windows will not rename
+	 * over a file that is still mapped
+	 */
+	static void read(String fileName, List<HighScore> scores) {
+		scores.clear();
+		ByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size == 0) {
+				return;
+			}
+			if (size > MAXSIZE) {
+				throw new IOException(fileName + " is too large to be a score file");
+			}
+			buffer = ByteBuffer.allocate((int) size);
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer) < 0) {
+					throw new IOException(fileName + " ended while it was being read");
+				}
+			}
+			buffer.flip();
+		} catch (NoSuchFileException e) {
+			return;
+		} catch (IOException e) {
+			System.out.println(e.getMessage());
+			return;
+		}
+
+		try {
+			if (buffer.limit() < 4 || buffer.getInt(0) != MAGIC) {
+				readLegacy(buffer, scores);
+				return;
+			}
+			readRecords(fileName, buffer, scores);
+		} catch (IOException e) {
+			System.out.println(e.getMessage());
+		}
+	}
+
+	/** Replaces the file with the scores, in the order given */
+	// the lock on the lock file is taken and released by the try, and never used in between
+	@SuppressWarnings("try")
+	static synchronized void write(String fileName, List<HighScore> scores) {
+		int count = scores.size();
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER + count * RECORD);
+		buffer.putInt(MAGIC).putInt(0).putShort(VERSION).putShort((short) RECORD).putInt(count);
+		for (int i = 0; i < count; i++) {
+			HighScore score = scores.get(i);
+			putString(buffer, score.getName(), NAMEBYTES);
+			putString(buffer, score.getDifficulty(), DIFFICULTYBYTES);
+			long board = score.getBoard();
+			buffer.putInt(score.getScore());
+			buffer.putInt(HighScore.keyWidth(board)).putInt(HighScore.keyHeight(board)).putInt(HighScore.keyMines(board));
+		}
+		buffer.putInt(CRC, checksum(buffer, buffer.limit()));
+		buffer.flip();
+
+		Path target = Paths.get(fileName);
+		Path temp = sibling(target, ".tmp");
+		try (FileChannel lock = FileChannel.open(sibling(target, ".lock"), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE); FileLock held = lock.lock()) {
+			try (FileChannel output = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING)) {
+				while (buffer.hasRemaining()) {
+					output.write(buffer);
+				}
+				output.force(true);
+			}
+			try {
+				Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException e) {
+			System.out.println(e.getMessage());
+		}
+	}
+
+	/** Deletes the file, holding the same lock as a write */
+	@SuppressWarnings("try")
+	static synchronized void delete(String fileName) {
+		Path target = Paths.get(fileName);
+		try (FileChannel lock = FileChannel.open(sibling(target, ".lock"), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE); FileLock held = lock.lock()) {
+			Files.deleteIfExists(target);
+		} catch (IOException e) {
+			System.out.println(e.getMessage());
+		}
+	}
+
+	private static void readRecords(String fileName, ByteBuffer buffer, List<HighScore> scores) throws IOException {
+		int size = buffer.limit();
+		if (size < HEADER) {
+			throw new IOException(fileName + " is damaged");
+		}
+		short version = buffer.getShort(CHECKED);
+		int recordSize = buffer.getShort(RECORDSIZE);
+		int count = buffer.getInt(COUNT);
+		if (version < 1 || recordSize < RECORD || count < 0 || count > (size - HEADER) / recordSize) {
+			throw new IOException(fileName + " is damaged");
+		}
+		int end = HEADER + count * recordSize;
+		if (buffer.getInt(CRC) != checksum(buffer, end)) {
+			throw new IOException(fileName + " failed its checksum");
+		}
+
+		// a newer version may add fields to the end of each record, which are skipped
+		for (int i = 0; i < count; i++) {
+			buffer.position(HEADER + i * recordSize);
+			String name = getString(buffer, NAMEBYTES);
+			String difficulty = getString(buffer, DIFFICULTYBYTES);
+			int time = buffer.getInt();
+			long board = HighScore.boardKey(buffer.getInt(), buffer.getInt(), buffer.getInt());
+			scores.add(new HighScore(name, difficulty, time, board));
+		}
+	}
+
+	/** Reads the original format, a run of name, difficulty and time with no header */
+	private static void readLegacy(ByteBuffer buffer, List<HighScore> scores) throws IOException {
+		byte[] bytes = new byte[buffer.limit()];
+		buffer.get(0, bytes);
+		try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes))) {
+			while (input.available() > 0) {
+				scores.add(new HighScore(input.readUTF(), input.readUTF(), input.readInt()));
+			}
+		}
+	}
+
+	/** The CRC-32 of the header after the checksum and of the records up to end */
+	private static int checksum(ByteBuffer buffer, int end) {
+		CRC32 crc = new CRC32();
+		crc.update(buffer.duplicate().limit(end).position(CHECKED));
+		return (int) crc.getValue();
+	}
+
+	/** Writes a length byte and the string's UTF-8 bytes, cut to fit and padded to the field's size */
+	private static void putString(ByteBuffer buffer, String s, int size) {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		int length = Math.min(bytes.length, size);
+		if (length < bytes.length) {
+			// never cut a character in half
+			while (length > 0 && (bytes[length] & 0xC0) == 0x80) {
+				length--;
+			}
+		}
+		buffer.put((byte) length);
+		buffer.put(bytes, 0, length);
+		buffer.position(buffer.position() + size - length);
+	}
+
+	private static String getString(ByteBuffer buffer, int size) throws IOException {
+		int length = buffer.get() & 0xFF;
+		if (length > size) {
+			throw new IOException("Damaged score record");
+		}
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		buffer.position(buffer.position() + size - length);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static Path sibling(Path file, String suffix) {
+		return file.resolveSibling(file.getFileName() + suffix);
+	}
+}
@@ -0,0 +1,308 @@
+package minesweeper;
+
+import java.util.Arrays;
+
+/**
+ * Works out which hidden cells are certainly safe and which are certainly
+ * mines from the numbers revealed so far, without guessing. Two rules are
+ * applied: a number whose remaining mines equal its unknown neighbours (or is
+ * zero) decides all of them, and two numbers sharing unknown neighbours decide
+ * the cells only one of them touches, either because one set is a subset of
+ * the other or because the difference in their remaining mines can only fit
+ * one way.
+ * <p>
+ * The solver only looks at numbers near cells that changed. After every move
+ * {@link #update()} reads the cells the board reports as changed and
+ * re-examines just the numbers around them, so the cost of a move depends on
+ * how much of the board it opened rather than on the size of the board.
+ * Player flags are never trusted; the solver keeps its own record of mines it
+ * has proven. Cells are walked through the board's table of neighbours, so
+ * the same rules work on any {@link Topology}.
+ */
+public class Solver {
+
+	private static final byte UNKNOWN = 0;
+	private static final byte SAFE = 1;
+	private static final byte MINE = 2;
+	private static final byte DECIDED = SAFE | MINE;
+	private static final byte QUEUED = 4;
+
+	private final BoardEngine board;
+	private final int width, height;
+	private final Topology.Neighbours neighbours;
+	private final byte[] known;
+
+	// numbers waiting to be re-examined
+	private int[] dirty = new int[64];
+	private int numDirty;
+
+	// hidden cells proven safe, used as a stack of hints
+	private int[] safeCells = new int[64];
+	private int numSafe;
+
+	// every cell proven to hold a mine, in the order they were found
+	private int[] mineCells = new int[64];
+	private int numMines;
+
+	// unknown neighbours of the two numbers being compared
+	private final int[] unknownA, unknownB, onlyA, onlyB;
+	// the numbers a number has already been compared against
+	private final int[] compared;
+
+	public Solver(BoardEngine board) {
+		this.board = board;
+		this.width = board.getWidth();
+		this.height = board.getHeight();
+		this.neighbours = board.getNeighbours();
+		this.known = new byte[width * height];
+		int degree = neighbours.getMaxDegree();
+		this.unknownA = new int[degree];
+		this.unknownB = new int[degree];
+		this.onlyA = new int[degree];
+		this.onlyB = new int[degree];
+		this.compared = new int[degree * degree];
+	}
+
+	/**
+	 * Takes in the cells changed by the board's last move and re-examines the
+	 * numbers around them. Call after every reveal or chord
+	 */
+	public void update() {
+		if (board.isChangedOverflow()) {
+			rebuild();
+			return;
+		}
+		for (int i = 0; i < board.getChangedCount(); i++) {
+			cellRevealed(board.getChangedCell(i));
+		}
+		propagate();
+	}
+
+	/**
+	 * Re-examines every revealed number on the board. Only a number with a
+	 * hidden neighbour can decide anything, and on a square board those are
+	 * found a word at a time from bitboards of the revealed cells
+	 */
+	public void rebuild() {
+		Bitboard revealed = board.revealedBits();
+		for (int c = revealed.nextSetBit(0); c >= 0; c = revealed.nextSetBit(c + 1)) {
+			known[c] |= SAFE;
+		}
+		Bitboard edge = (board.getTopology() == Topology.SQUARE) ? revealed.and(revealed.not().around()) : revealed;
+		for (int c = edge.nextSetBit(0); c >= 0; c = edge.nextSetBit(c + 1)) {
+			if (board.getAdjacentMines(c) > 0) {
+				queue(c);
+			}
+		}
+		propagate();
+	}
+
+	/** Returns a hidden cell that is certainly safe, or -1 if none is known */
+	public int nextSafe() {
+		while (numSafe > 0) {
+			int c = safeCells[numSafe - 1];
+			if (!board.isRevealed(c)) {
+				return c;
+			}
+			numSafe--;
+		}
+		return -1;
+	}
+
+	/** The number of cells proven to be mines */
+	public int getMineCount() {
+		return numMines;
+	}
+
+	/** The index of the i'th cell proven to be a mine */
+	public int getMine(int i) {
+		return mineCells[i];
+	}
+
+	public boolean isKnownSafe(int x, int y) {
+		return (known[board.index(x, y)] & DECIDED) == SAFE;
+	}
+
+	public boolean isKnownMine(int x, int y) {
+		return (known[board.index(x, y)] & DECIDED) == MINE;
+	}
+
+	private void cellRevealed(int c) {
+		if (!board.isRevealed(c)) {
+			return;
+		}
+		known[c] |= SAFE;
+		markAround(c);
+	}
+
+	/** Queues the revealed numbers among a cell and its neighbours */
+	private void markAround(int c) {
+		queueNumber(c);
+		int k = neighbours.kindOf(c);
+		for (int e = neighbours.start(k); e < neighbours.end(k); e++) {
+			queueNumber(c + neighbours.delta(e));
+		}
+	}
+
+	private void queueNumber(int n) {
+		if (board.isRevealed(n) && board.getAdjacentMines(n) > 0) {
+			queue(n);
+		}
+	}
+
+	private void queue(int n) {
+		if ((known[n] & QUEUED) == 0) {
+			known[n] |= QUEUED;
+			if (numDirty == dirty.length) {
+				dirty = Arrays.copyOf(dirty, dirty.length * 2);
+			}
+			dirty[numDirty++] = n;
+		}
+	}
+
+	private void propagate() {
+		while (numDirty > 0) {
+			int c = dirty[--numDirty];
+			known[c] &= ~QUEUED;
+			examine(c);
+		}
+	}
+
+	/** Applies both rules to the number in cell a */
+	private void examine(int a) {
+		int remainingA = board.getAdjacentMines(a);
+		int sizeA = collectUnknown(a, unknownA);
+		if (sizeA == 0) {
+			return;
+		}
+		remainingA -= minesAround(a);
+
+		if (remainingA == 0 || remainingA == sizeA) {
+			decideAll(unknownA, sizeA, remainingA);
+			return;
+		}
+
+		// compare against every other number that shares one of these unknown cells
+		int numCompared = 0;
+		for (int u = 0; u < sizeA; u++) {
+			int k = neighbours.kindOf(unknownA[u]);
+			for (int e = neighbours.start(k); e < neighbours.end(k); e++) {
+				int b = unknownA[u] + neighbours.delta(e);
+				if (b == a || !board.isRevealed(b) || board.getAdjacentMines(b) == 0
+						|| contains(compared, numCompared, b)) {
+					continue;
+				}
+				compared[numCompared++] = b;
+				int sizeB = collectUnknown(b, unknownB);
+				if (sizeB == 0) {
+					continue;
+				}
+				int remainingB = board.getAdjacentMines(b) - minesAround(b);
+
+				int sizeOnlyA = difference(unknownA, sizeA, unknownB, sizeB, onlyA);
+				if (sizeOnlyA == sizeA) {
+					continue;
+				}
+				int sizeOnlyB = difference(unknownB, sizeB, unknownA, sizeA, onlyB);
+
+				if (sizeOnlyA == 0) {
+					// A is a subset of B, so B's other cells hold the rest of B's mines
+					decideAll(onlyB, sizeOnlyB, remainingB - remainingA);
+				} else if (sizeOnlyB == 0) {
+					decideAll(onlyA, sizeOnlyA, remainingA - remainingB);
+				} else if (remainingB - remainingA == sizeOnlyB) {
+					// B needs more mines than the shared cells can give it
+					decide(onlyB, sizeOnlyB, MINE);
+					decide(onlyA, sizeOnlyA, SAFE);
+				} else if (remainingA - remainingB == sizeOnlyA) {
+					decide(onlyA, sizeOnlyA, MINE);
+					decide(onlyB, sizeOnlyB, SAFE);
+				}
+
+				if ((known[a] & QUEUED) != 0) {
+					// this number has learnt something new and will be examined again
+					return;
+				}
+			}
+		}
+	}
+
+	/** Fills the buffer with the undecided neighbours of cell c, in index order */
+	private int collectUnknown(int c, int[] buffer) {
+		int size = 0;
+		int k = neighbours.kindOf(c);
+		for (int e = neighbours.start(k); e < neighbours.end(k); e++) {
+			int n = c + neighbours.delta(e);
+			if ((known[n] & DECIDED) == UNKNOWN) {
+				buffer[size++] = n;
+			}
+		}
+		return size;
+	}
+
+	private int minesAround(int c) {
+		int mines = 0;
+		int k = neighbours.kindOf(c);
+		for (int e = neighbours.start(k); e < neighbours.end(k); e++) {
+			if ((known[c + neighbours.delta(e)] & DECIDED) == MINE) {
+				mines++;
+			}
+		}
+		return mines;
+	}
+
+	private static boolean contains(int[] cells, int size, int c) {
+		for (int i = 0; i < size; i++) {
+			if (cells[i] == c) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/** Fills the buffer with the cells of the sorted list a that are not in the sorted list b */
+	private static int difference(int[] a, int sizeA, int[] b, int sizeB, int[] buffer) {
+		int size = 0;
+		int j = 0;
+		for (int i = 0; i < sizeA; i++) {
+			while (j < sizeB && b[j] < a[i]) {
+				j++;
+			}
+			if (j == sizeB || b[j] != a[i]) {
+				buffer[size++] = a[i];
+			}
+		}
+		return size;
+	}
+
+	/** Decides a group of cells known to hold the given number of mines, if it can */
+	private void decideAll(int[] cells, int size, int mines) {
+		if (mines == 0) {
+			decide(cells, size, SAFE);
+		} else if (mines == size) {
+			decide(cells, size, MINE);
+		}
+	}
+
+	private void decide(int[] cells, int size, byte state) {
+		for (int k = 0; k < size; k++) {
+			int c = cells[k];
+			if ((known[c] & DECIDED) != UNKNOWN) {
+				continue;
+			}
+			known[c] |= state;
+			if (state == SAFE) {
+				if (numSafe == safeCells.length) {
+					safeCells = Arrays.copyOf(safeCells, safeCells.length * 2);
+				}
+				safeCells[numSafe++] = c;
+			} else {
+				if (numMines == mineCells.length) {
+					mineCells = Arrays.copyOf(mineCells, mineCells.length * 2);
+				}
+				mineCells[numMines++] = c;
+			}
+			markAround(c);
+		}
+	}
+}
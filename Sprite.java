@@ -0,0 +1,36 @@
+package minesweeper;
+
+/** The images of the game, each with the size it is drawn at */
+enum Sprite {
+	EMPTYPRESSED("emptyPressed.png"), M1("1tile.png"), M2("2tile.png"), M3("3tile.png"), M4("4tile.png"),
+	M5("5tile.png"), M6("6tile.png"), M7("7tile.png"), M8("8tile.png"), EMPTYSPACE("empty.png"), FLAG("flag.png"),
+	MINE("mine.png"), XMINE("xmine.png"), REDMINE("redmine.png"),
+
+	D0("0.png", SpriteAtlas.DIGITWIDTH), D1("1.png", SpriteAtlas.DIGITWIDTH), D2("2.png", SpriteAtlas.DIGITWIDTH),
+	D3("3.png", SpriteAtlas.DIGITWIDTH), D4("4.png", SpriteAtlas.DIGITWIDTH), D5("5.png", SpriteAtlas.DIGITWIDTH),
+	D6("6.png", SpriteAtlas.DIGITWIDTH), D7("7.png", SpriteAtlas.DIGITWIDTH), D8("8.png", SpriteAtlas.DIGITWIDTH),
+	D9("9.png", SpriteAtlas.DIGITWIDTH),
+
+	SMILE("smile.png", SpriteAtlas.FACESIZE), SMILEPRESSED("smilepressed.png", SpriteAtlas.FACESIZE),
+	OFACE("ohface.png", SpriteAtlas.FACESIZE), DEAD("dead.png", SpriteAtlas.FACESIZE),
+	SUNGLASSES("sunglasses.png", SpriteAtlas.FACESIZE);
+
+	final String file;
+	final int width, height;
+
+	/** A board cell */
+	Sprite(String file) {
+		this(file, SpriteAtlas.CELLSIZE, SpriteAtlas.CELLSIZE);
+	}
+
+	/** A digit or face, as tall as the top bar */
+	Sprite(String file, int width) {
+		this(file, width, SpriteAtlas.BARHEIGHT);
+	}
+
+	Sprite(String file, int width, int height) {
+		this.file = file;
+		this.width = width;
+		this.height = height;
+	}
+}
@@ -0,0 +1,148 @@
+package minesweeper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import javafx.geometry.Rectangle2D;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.WritableImage;
+
+/**
+ * Every sprite packed into one image, each already scaled to the size it is
+ * shown at, so a cell is drawn with one unscaled copy from the atlas and the
+ * digits and faces are views onto it. Sprites are laid out in rows of equal
+ * height when the class loads, but each is only read and decoded the first
+ * time it is drawn.
+ * <p>
+ * Images are looked up on the classpath under /res first, then in res.zip,
+ * then in an unpacked res folder, so the game runs from a jar or straight
+ * from the source tree. A sprite that can not be found or read is a broken
+ * install, so it throws instead of leaving a blank where the sprite goes.
+ */
+final class SpriteAtlas {
+
+	static final int CELLSIZE = 32;
+	static final int BARHEIGHT = 52;
+	static final int DIGITWIDTH = 28;
+	static final int FACESIZE = 52;
+
+	private static final String ARCHIVE = "res.zip";
+	private static final String FOLDER = "res";
+
+	private static final Sprite[] SPRITES = Sprite.values();
+	private static final int[] X = new int[SPRITES.length];
+	private static final int[] Y = new int[SPRITES.length];
+	private static final Rectangle2D[] VIEWPORTS = new Rectangle2D[SPRITES.length];
+	private static final int WIDTH, HEIGHT;
+
+	static {
+		// one row per run of sprites with the same height
+		int x = 0, y = 0, rowHeight = 0, width = 0;
+		for (Sprite s : SPRITES) {
+			if (s.height != rowHeight) {
+				y += rowHeight;
+				x = 0;
+				rowHeight = s.height;
+			}
+			X[s.ordinal()] = x;
+			Y[s.ordinal()] = y;
+			VIEWPORTS[s.ordinal()] = new Rectangle2D(x, y, s.width, s.height);
+			x += s.width;
+			width = Math.max(width, x);
+		}
+		WIDTH = width;
+		HEIGHT = y + rowHeight;
+	}
+
+	// created and filled in on the FX thread as sprites are first used
+	private static WritableImage atlas;
+	private static final boolean[] decoded = new boolean[SPRITES.length];
+	private static ZipFile archive;
+
+	private SpriteAtlas() {
+	}
+
+	/** Copies a sprite onto the canvas with its top left corner at (x, y) */
+	static void draw(GraphicsContext gc, Sprite s, double x, double y) {
+		load(s);
+		gc.drawImage(atlas, X[s.ordinal()], Y[s.ordinal()], s.width, s.height, x, y, s.width, s.height);
+	}
+
+	/** Points an image view at a sprite */
+	static void show(ImageView view, Sprite s) {
+		load(s);
+		if (view.getImage() != atlas) {
+			view.setImage(atlas);
+		}
+		view.setViewport(VIEWPORTS[s.ordinal()]);
+	}
+
+	/** Reads a sprite at its original size on its own, for a window icon */
+	static Image image(Sprite s) {
+		try (InputStream input = openOrThrow(s.file)) {
+			return checked(new Image(input), s.file);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not read image " + s.file, e);
+		}
+	}
+
+	private static void load(Sprite s) {
+		if (atlas == null) {
+			atlas = new WritableImage(WIDTH, HEIGHT);
+		}
+		if (decoded[s.ordinal()]) {
+			return;
+		}
+
+		try (InputStream input = openOrThrow(s.file)) {
+			Image image = checked(new Image(input, s.width, s.height, false, true), s.file);
+			atlas.getPixelWriter().setPixels(X[s.ordinal()], Y[s.ordinal()], s.width, s.height,
+					image.getPixelReader(), 0, 0);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not read image " + s.file, e);
+		}
+		decoded[s.ordinal()] = true;
+	}
+
+	private static InputStream openOrThrow(String file) throws IOException {
+		InputStream input = open(file);
+		if (input == null) {
+			throw new IllegalStateException("Missing image " + file + ", looked in /" + FOLDER + " on the classpath, "
+					+ ARCHIVE + " and " + FOLDER);
+		}
+		return input;
+	}
+
+	private static Image checked(Image image, String file) {
+		if (image.isError()) {
+			throw new IllegalStateException("Could not decode image " + file, image.getException());
+		}
+		return image;
+	}
+
+	/** Opens an image from the classpath, res.zip or the res folder, or returns null */
+	private static InputStream open(String file) throws IOException {
+		InputStream input = SpriteAtlas.class.getResourceAsStream("/" + FOLDER + "/" + file);
+		if (input != null) {
+			return input;
+		}
+		if (archive == null && new File(ARCHIVE).isFile()) {
+			archive = new ZipFile(ARCHIVE);
+		}
+		if (archive != null) {
+			ZipEntry entry = archive.getEntry(FOLDER + "/" + file);
+			if (entry != null) {
+				return archive.getInputStream(entry);
+			}
+		}
+		File unpacked = new File(FOLDER, file);
+		return unpacked.isFile() ? new FileInputStream(unpacked) : null;
+	}
+}
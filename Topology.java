@@ -0,0 +1,276 @@
+package minesweeper;
+
+import java.util.Arrays;
+
+/**
+ * Which cells of a board count as neighbours. A topology only has to say who
+ * the neighbours of one cell are; the board asks it once, when it is built,
+ * for a {@link Neighbours} table that every move then walks as a flat array.
+ * <p>
+ * Three shapes are built in: the usual square grid, a torus whose edges wrap
+ * around to the other side, and a hexagonal grid laid out as offset rows, in
+ * which every odd row sits half a cell to the right of the even rows. Other
+ * shapes can be made by extending this class, as long as every cell of a
+ * board with the same edges and the same row parity has its neighbours at the
+ * same offsets, neighbours are at most one row and one column away, and a
+ * cell is always a neighbour of its neighbours.
+ */
+public abstract class Topology {
+
+	public static final Topology SQUARE = new Square();
+	public static final Topology TORUS = new Torus();
+	public static final Topology HEX = new Hex();
+
+	// the shapes a saved game can name, by their position here
+	private static final Topology[] SHAPES = { SQUARE, TORUS, HEX };
+
+	public abstract String getName();
+
+	/** The most neighbours any cell can have */
+	public abstract int getMaxDegree();
+
+	/**
+	 * Writes the indices of the neighbours of (x, y) into the buffer and returns
+	 * how many there are. The cell itself is left out and no neighbour is
+	 * written twice
+	 */
+	protected abstract int neighbours(int x, int y, int width, int height, int[] buffer);
+
+	/** The number of rows after which the neighbours repeat, 2 for offset rows */
+	protected int getRowPeriod() {
+		return 1;
+	}
+
+	/** The table of neighbours for a board of the given size */
+	public Neighbours neighbours(int width, int height) {
+		return new Neighbours(this, width, height);
+	}
+
+	/** The number a saved game stores this topology under, or -1 if it has none */
+	int getId() {
+		return Arrays.asList(SHAPES).indexOf(this);
+	}
+
+	/** The built in topology with the given number, or null */
+	static Topology byId(int id) {
+		return (id >= 0 && id < SHAPES.length) ? SHAPES[id] : null;
+	}
+
+	/** Every built in topology */
+	public static Topology[] values() {
+		return SHAPES.clone();
+	}
+
+	@Override
+	public String toString() {
+		return getName();
+	}
+
+	/**
+	 * The neighbours of every cell of one board in compressed sparse row form.
+	 * Cells are sorted into kinds by which edges they touch and by the parity
+	 * of their row, and all cells of a kind have their neighbours at the same
+	 * offsets from their own index. The offsets of kind k are
+	 * {@code delta(start(k))} up to but not including {@code delta(end(k))},
+	 * in increasing order, so the neighbours of a cell come out in index order.
+	 * Only the kinds are stored per row and column, so the table takes
+	 * memory in proportion to the width and height rather than to the area.
+	 * <p>
+	 * A cell's neighbours are walked with
+	 *
+	 * <pre>
+	 * int k = neighbours.kindOf(c);
+	 * for (int e = neighbours.start(k); e &lt; neighbours.end(k); e++) {
+	 * 	int n = c + neighbours.delta(e);
+	 * }
+	 * </pre>
+	 */
+	public static final class Neighbours {
+		// a column or row on the low or the high edge of the board
+		private static final int LOW = 1, HIGH = 2, EDGES = 4;
+
+		private final int width;
+		private final int maxDegree;
+		private final int[] columnKinds;
+		// already multiplied by the number of column kinds
+		private final int[] rowKinds;
+		private final int[] first;
+		private final int[] deltas;
+
+		Neighbours(Topology topology, int width, int height) {
+			this.width = width;
+			this.maxDegree = topology.getMaxDegree();
+			this.columnKinds = new int[width];
+			this.rowKinds = new int[height];
+			int kinds = EDGES * EDGES * topology.getRowPeriod();
+
+			// one column and one row standing in for each kind that the board has
+			int[] column = new int[EDGES];
+			int[] row = new int[kinds / EDGES];
+			Arrays.fill(column, -1);
+			Arrays.fill(row, -1);
+			for (int x = 0; x < width; x++) {
+				columnKinds[x] = edges(x, width);
+				column[columnKinds[x]] = x;
+			}
+			for (int y = 0; y < height; y++) {
+				int kind = edges(y, height) + EDGES * (y % topology.getRowPeriod());
+				rowKinds[y] = kind * EDGES;
+				row[kind] = y;
+			}
+
+			first = new int[kinds + 1];
+			int[] all = new int[kinds * maxDegree];
+			int[] buffer = new int[maxDegree];
+			int size = 0;
+			for (int k = 0; k < kinds; k++) {
+				int x = column[k % EDGES], y = row[k / EDGES];
+				if (x >= 0 && y >= 0) {
+					int c = y * width + x;
+					int n = topology.neighbours(x, y, width, height, buffer);
+					for (int i = 0; i < n; i++) {
+						all[size + i] = buffer[i] - c;
+					}
+					Arrays.sort(all, size, size + n);
+					size += n;
+				}
+				first[k + 1] = size;
+			}
+			deltas = Arrays.copyOf(all, size);
+		}
+
+		private static int edges(int i, int length) {
+			return ((i == 0) ? LOW : 0) | ((i == length - 1) ? HIGH : 0);
+		}
+
+		public int getMaxDegree() {
+			return maxDegree;
+		}
+
+		/** The kind of the cell at (x, y) */
+		public int kind(int x, int y) {
+			return rowKinds[y] + columnKinds[x];
+		}
+
+		/** The kind of the cell with the given index */
+		public int kindOf(int c) {
+			int y = c / width;
+			return rowKinds[y] + columnKinds[c - y * width];
+		}
+
+		/** Where the offsets of a kind start */
+		public int start(int kind) {
+			return first[kind];
+		}
+
+		/** Where the offsets of a kind end */
+		public int end(int kind) {
+			return first[kind + 1];
+		}
+
+		/** The offset from a cell to one of its neighbours */
+		public int delta(int e) {
+			return deltas[e];
+		}
+	}
+
+	/** Eight neighbours, cut off at the edges */
+	private static class Square extends Topology {
+		@Override
+		public String getName() {
+			return "Square";
+		}
+
+		@Override
+		public int getMaxDegree() {
+			return 8;
+		}
+
+		@Override
+		protected int neighbours(int x, int y, int width, int height, int[] buffer) {
+			int n = 0;
+			for (int j = Math.max(0, y - 1); j <= Math.min(height - 1, y + 1); j++) {
+				for (int i = Math.max(0, x - 1); i <= Math.min(width - 1, x + 1); i++) {
+					if (i != x || j != y) {
+						buffer[n++] = j * width + i;
+					}
+				}
+			}
+			return n;
+		}
+	}
+
+	/** Eight neighbours, wrapping around from each edge to the opposite one */
+	private static class Torus extends Topology {
+		@Override
+		public String getName() {
+			return "Torus";
+		}
+
+		@Override
+		public int getMaxDegree() {
+			return 8;
+		}
+
+		@Override
+		protected int neighbours(int x, int y, int width, int height, int[] buffer) {
+			int n = 0;
+			for (int j = -1; j <= 1; j++) {
+				for (int i = -1; i <= 1; i++) {
+					int c = Math.floorMod(y + j, height) * width + Math.floorMod(x + i, width);
+					// a board two cells or fewer across meets itself going both ways
+					if (c != y * width + x && !contains(buffer, n, c)) {
+						buffer[n++] = c;
+					}
+				}
+			}
+			return n;
+		}
+	}
+
+	/**
+	 * Six neighbours on offset rows: the two beside a cell and two each in the
+	 * rows above and below, which lean left on even rows and right on odd rows
+	 */
+	private static class Hex extends Topology {
+		@Override
+		public String getName() {
+			return "Hexagonal";
+		}
+
+		@Override
+		public int getMaxDegree() {
+			return 6;
+		}
+
+		@Override
+		protected int getRowPeriod() {
+			return 2;
+		}
+
+		@Override
+		protected int neighbours(int x, int y, int width, int height, int[] buffer) {
+			int n = 0;
+			int lean = ((y & 1) == 0) ? -1 : 0;
+			for (int j = Math.max(0, y - 1); j <= Math.min(height - 1, y + 1); j++) {
+				int from = (j == y) ? x - 1 : x + lean;
+				int to = (j == y) ? x + 1 : x + lean + 1;
+				for (int i = Math.max(0, from); i <= Math.min(width - 1, to); i++) {
+					if (i != x || j != y) {
+						buffer[n++] = j * width + i;
+					}
+				}
+			}
+			return n;
+		}
+	}
+
+	private static boolean contains(int[] buffer, int size, int c) {
+		for (int i = 0; i < size; i++) {
+			if (buffer[i] == c) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
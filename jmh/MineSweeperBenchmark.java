@@ -0,0 +1,324 @@
+package minesweeper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the core game operations so that changes to the board
+ * representation can be compared run against run. Build and run with
+ * <pre>
+ * mvn -P jmh package
+ * java -jar target/benchmarks.jar -prof gc
+ * </pre>
+ * where {@code -prof gc} adds the allocation rate, per op as
+ * {@code gc.alloc.rate.norm}. Add a benchmark name or {@code -p size=1000x1000}
+ * to run only part of the table.
+ * <p>
+ * Every op but the mapped fill leaves the board as it found it, so nothing is
+ * rebuilt between calls and JMH does not have to time each call on its own: a
+ * new game is built and its mines placed in one op, and a fill or chord is
+ * taken back with undo in the same op as it is made, keeping one move of
+ * history as a game does.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+// the Vector API is an incubator module, and the mine counts use it when it is there
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+public class MineSweeperBenchmark {
+
+	private static final int CUSTOMSIZES = 5000;
+
+	/** A board of each size and density, with its mines placed around the centre */
+	@State(Scope.Thread)
+	public static class Board {
+		@Param({ "8x8", "16x16", "32x16", "1000x1000", "4000x4000" })
+		public String size;
+
+		@Param({ "0.01", "0.15", "0.45" })
+		public double density;
+
+		// square boards are counted with the bitboard adders, a torus one mine at a time
+		@Param({ "Square", "Torus" })
+		public String shape;
+
+		int width, height, mines;
+		Topology topology;
+		long seed = 1;
+		BoardEngine board;
+
+		@Setup
+		public void setup() {
+			String[] wh = size.split("x");
+			width = Integer.parseInt(wh[0]);
+			height = Integer.parseInt(wh[1]);
+			mines = Math.max(1, (int) (width * height * density));
+			for (Topology t : Topology.values()) {
+				if (t.getName().equals(shape)) {
+					topology = t;
+				}
+			}
+			board = new BoardEngine(width, height, mines, seed, topology);
+			board.setHistoryDepth(1);
+			board.generate(width / 2, height / 2);
+		}
+	}
+
+	/**
+	 * The mines of a large board, counted again and again each way. Counting
+	 * the same mines writes the same cells, so the board needs no reset
+	 */
+	@State(Scope.Thread)
+	public static class Counts {
+		@Param({ "4000x4000" })
+		public String size;
+
+		@Param({ "0.15" })
+		public double density;
+
+		BoardEngine board;
+		Bitboard mines;
+
+		@Setup
+		public void setup() {
+			String[] wh = size.split("x");
+			int width = Integer.parseInt(wh[0]);
+			int height = Integer.parseInt(wh[1]);
+			board = new BoardEngine(width, height, (int) (width * height * density), 1);
+			board.generate(width / 2, height / 2);
+			mines = board.mineBits();
+			if (BoardEngine.VECTOR == null) {
+				throw new IllegalStateException("The vector writer needs --add-modules jdk.incubator.vector");
+			}
+		}
+	}
+
+	/** An expert board with one numbered cell whose mines have all been flagged */
+	@State(Scope.Thread)
+	public static class Chord {
+		BoardEngine board;
+		int x, y;
+
+		@Setup
+		public void setup() {
+			for (long seed = 1;; seed++) {
+				board = new BoardEngine(32, 16, 99, seed);
+				board.reveal(16, 8);
+				for (y = 0; y < 16; y++) {
+					for (x = 0; x < 32; x++) {
+						if (board.isRevealed(x, y) && board.getAdjacentMines(x, y) > 0 && flagAround(board, x, y)) {
+							board.setHistoryDepth(1);
+							return;
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/** The size of a board kept in a memory mapped file, and the file */
+	@State(Scope.Thread)
+	public static abstract class Mapped {
+		@Param({ "1000x1000" })
+		public String size;
+
+		@Param({ "0.15" })
+		public double density;
+
+		int width, height, mines;
+		File file;
+		MappedBoard board;
+		long seed;
+
+		@Setup(Level.Trial)
+		public void createFile() throws IOException {
+			String[] wh = size.split("x");
+			width = Integer.parseInt(wh[0]);
+			height = Integer.parseInt(wh[1]);
+			mines = (int) (width * height * density);
+			file = File.createTempFile("benchmark", ".msb");
+		}
+
+		void newBoard() throws IOException {
+			if (board != null) {
+				board.close();
+			}
+			board = MappedBoard.create(file.getPath(), width, height, mines, ++seed);
+			board.generate(width / 2, height / 2);
+		}
+
+		@TearDown(Level.Trial)
+		public void deleteFile() throws IOException {
+			board.close();
+			file.delete();
+		}
+	}
+
+	/**
+	 * A fill cannot be undone on a mapped board, so each fill gets a new board,
+	 * built outside the timed call. A fill this size takes milliseconds, far
+	 * longer than the timer JMH reads around it
+	 */
+	public static class MappedFill extends Mapped {
+		@Setup(Level.Invocation)
+		public void setup() throws IOException {
+			newBoard();
+		}
+	}
+
+	/** One mapped board, flagged and unflagged again and again */
+	public static class MappedFlag extends Mapped {
+		@Setup(Level.Trial)
+		public void setup() throws IOException {
+			newBoard();
+		}
+	}
+
+	/** A score file with a few expert scores, and one with thousands of custom board sizes */
+	@State(Scope.Thread)
+	public static class Scores {
+		File file, customFile;
+		ArrayList<HighScore> scores = new ArrayList<HighScore>();
+		HighScoreStore store;
+		HighScoreStore custom;
+		int next;
+
+		@Setup
+		public void setup() throws IOException {
+			file = File.createTempFile("benchmark", ".swp");
+			customFile = File.createTempFile("benchmark", ".swp");
+			for (int i = 0; i < 3; i++) {
+				scores.add(new HighScore("player" + (char) ('a' + i), "expert", 100 + i));
+			}
+			ScoreFile.write(file.getPath(), scores);
+
+			store = new HighScoreStore(scores.size());
+			custom = new HighScoreStore(scores.size());
+			for (int size = 10; size < 10 + CUSTOMSIZES; size++) {
+				custom.add(customFile.getPath(),
+						new HighScore("player", "custom", size, HighScore.boardKey(size, size, size)));
+			}
+			custom.flush();
+		}
+
+		@TearDown
+		public void delete() {
+			ScoreFile.delete(file.getPath());
+			ScoreFile.delete(customFile.getPath());
+		}
+	}
+
+	@Benchmark
+	public int generateMines(Board b) {
+		BoardEngine board = new BoardEngine(b.width, b.height, b.mines, ++b.seed, b.topology);
+		board.generate(b.width / 2, b.height / 2);
+		return board.getHiddenSafe();
+	}
+
+	@Benchmark
+	public int floodFill(Board b) {
+		int revealed = b.board.reveal(b.width / 2, b.height / 2);
+		b.board.undo();
+		return revealed;
+	}
+
+	@Benchmark
+	public void countMinesSequential(Counts c) {
+		c.board.countMines(c.mines, false, BoardEngine.SCALAR);
+	}
+
+	@Benchmark
+	public void countMinesBanded(Counts c) {
+		c.board.countMines(c.mines, true, BoardEngine.SCALAR);
+	}
+
+	@Benchmark
+	public void countMinesVector(Counts c) {
+		c.board.countMines(c.mines, false, BoardEngine.VECTOR);
+	}
+
+	@Benchmark
+	public void countMinesBandedVector(Counts c) {
+		c.board.countMines(c.mines, true, BoardEngine.VECTOR);
+	}
+
+	@Benchmark
+	public int chord(Chord c) {
+		int revealed = c.board.chord(c.x, c.y);
+		c.board.undo();
+		return revealed;
+	}
+
+	@Benchmark
+	public int mappedFloodFill(MappedFill m) {
+		return m.board.reveal(m.width / 2, m.height / 2);
+	}
+
+	@Benchmark
+	public boolean mappedToggleFlag(MappedFlag m) {
+		return m.board.toggleFlag(0, 0);
+	}
+
+	@Benchmark
+	public void writeScoresToFile(Scores s) {
+		ScoreFile.write(s.file.getPath(), s.scores);
+	}
+
+	@Benchmark
+	public int getScoresFromFile(Scores s) {
+		ArrayList<HighScore> scores = new ArrayList<HighScore>();
+		ScoreFile.read(s.file.getPath(), scores);
+		return scores.size();
+	}
+
+	@Benchmark
+	public int storeGetScores(Scores s) {
+		return s.store.getScores(s.file.getPath(), s.scores.get(0).getBoard()).size();
+	}
+
+	@Benchmark
+	public boolean storeQualifiesCustom(Scores s) {
+		int size = 10 + (s.next++ * 7919) % CUSTOMSIZES;
+		return s.custom.qualifies(s.customFile.getPath(), HighScore.boardKey(size, size, size), 1);
+	}
+
+	/** Flags the mines around a cell if doing so leaves something to chord open */
+	private static boolean flagAround(BoardEngine board, int x, int y) {
+		boolean hidden = false;
+		for (int j = Math.max(0, y - 1); j <= Math.min(board.getHeight() - 1, y + 1); j++) {
+			for (int i = Math.max(0, x - 1); i <= Math.min(board.getWidth() - 1, x + 1); i++) {
+				if (!board.isRevealed(i, j) && !board.hasMine(i, j)) {
+					hidden = true;
+				}
+			}
+		}
+		if (!hidden) {
+			return false;
+		}
+		for (int j = Math.max(0, y - 1); j <= Math.min(board.getHeight() - 1, y + 1); j++) {
+			for (int i = Math.max(0, x - 1); i <= Math.min(board.getWidth() - 1, x + 1); i++) {
+				if (board.hasMine(i, j) && !board.isFlagged(i, j)) {
+					board.toggleFlag(i, j);
+				}
+			}
+		}
+		return true;
+	}
+}
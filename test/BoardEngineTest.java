@@ -0,0 +1,235 @@
+package minesweeper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the board against an oracle that knows nothing of its packed cells
+ * or neighbour tables: the neighbours of a cell are worked out from the rules
+ * of each topology, and the cells a click opens by a plain breadth first
+ * search.
+ */
+class BoardEngineTest {
+
+	private static final int BOARDS = 200;
+
+	@Test
+	void countsMatchTheNeighbours() {
+		SplittableRandom random = new SplittableRandom(1);
+		for (Topology topology : Topology.values()) {
+			for (int b = 0; b < BOARDS; b++) {
+				BoardEngine board = randomBoard(random, topology);
+				int first = random.nextInt(board.getWidth() * board.getHeight());
+				board.reveal(first % board.getWidth(), first / board.getWidth());
+
+				int mines = 0;
+				for (int c = 0; c < board.getWidth() * board.getHeight(); c++) {
+					int x = c % board.getWidth(), y = c / board.getWidth();
+					mines += board.hasMine(x, y) ? 1 : 0;
+					int count = 0;
+					for (int n : neighbours(topology, x, y, board.getWidth(), board.getHeight())) {
+						count += board.hasMine(n % board.getWidth(), n / board.getWidth()) ? 1 : 0;
+					}
+					assertEquals(count, board.getAdjacentMines(x, y), topology + " cell " + c);
+				}
+				assertEquals(board.getNMines(), mines);
+				assertFalse(board.hasMine(first % board.getWidth(), first / board.getWidth()));
+			}
+		}
+	}
+
+	@Test
+	void firstClickKeepsItsNeighboursClear() {
+		SplittableRandom random = new SplittableRandom(2);
+		for (Topology topology : Topology.values()) {
+			for (int b = 0; b < BOARDS; b++) {
+				BoardEngine board = randomBoard(random, topology);
+				int x = random.nextInt(board.getWidth()), y = random.nextInt(board.getHeight());
+				List<Integer> around = neighbours(topology, x, y, board.getWidth(), board.getHeight());
+				board.generate(x, y);
+				if (board.getWidth() * board.getHeight() - around.size() - 1 >= board.getNMines()) {
+					for (int n : around) {
+						assertFalse(board.hasMine(n % board.getWidth(), n / board.getWidth()), topology + " " + n);
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	void revealsMatchTheFloodFill() {
+		SplittableRandom random = new SplittableRandom(3);
+		for (Topology topology : Topology.values()) {
+			for (int b = 0; b < BOARDS; b++) {
+				BoardEngine board = randomBoard(random, topology);
+				int width = board.getWidth(), height = board.getHeight();
+				boolean[] open = new boolean[width * height];
+				while (!board.isGameOver()) {
+					int c = random.nextInt(width * height);
+					int x = c % width, y = c / width;
+					if (random.nextInt(8) == 0) {
+						board.toggleFlag(x, y);
+						continue;
+					}
+					board.reveal(x, y);
+					if (!open[c] && !board.isFlagged(x, y) && !board.hasMine(x, y)) {
+						flood(board, topology, c, open);
+					}
+					for (int i = 0; i < open.length; i++) {
+						assertEquals(open[i], board.isRevealed(i % width, i / width), topology + " cell " + i);
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	void undoAndRedoRetraceTheGame() {
+		SplittableRandom random = new SplittableRandom(4);
+		for (Topology topology : Topology.values()) {
+			for (int b = 0; b < BOARDS; b++) {
+				BoardEngine board = randomBoard(random, topology);
+				board.setHistoryDepth(Integer.MAX_VALUE);
+				int width = board.getWidth(), height = board.getHeight();
+
+				List<String> states = new ArrayList<String>();
+				states.add(state(board));
+				while (!board.isGameOver()) {
+					int x = random.nextInt(width), y = random.nextInt(height);
+					int button = random.nextInt(4);
+					boolean changed = (button == 0) ? board.toggleFlag(x, y)
+							: (button == 1) ? board.chord(x, y) > 0 : board.reveal(x, y) > 0;
+					if (changed) {
+						states.add(state(board));
+					}
+				}
+
+				for (int i = states.size() - 2; i >= 0; i--) {
+					assertTrue(board.undo() > 0);
+					assertEquals(states.get(i), state(board), topology + " undo to move " + i);
+				}
+				assertFalse(board.canUndo());
+				for (int i = 1; i < states.size(); i++) {
+					assertTrue(board.redo() > 0);
+					assertEquals(states.get(i), state(board), topology + " redo to move " + i);
+				}
+				assertFalse(board.canRedo());
+			}
+		}
+	}
+
+	@Test
+	void bandsOfRowsCountTheSameAsOneThread() {
+		assertSameCounts(BoardEngine.SCALAR, 5);
+	}
+
+	@Test
+	void theVectorWriterCountsTheSameAsTheScalarOne() {
+		// only there when the JVM was started with the incubator module, as the Maven build starts it
+		assumeTrue(BoardEngine.VECTOR != null, "jdk.incubator.vector is not in the boot layer");
+		assertSameCounts(BoardEngine.VECTOR, 6);
+	}
+
+	/**
+	 * Counts the mines of boards as wide as a word and either side of one, and
+	 * tall enough to be split into bands, with the given writer on one thread
+	 * and in bands, and checks every cell against the board generated the
+	 * usual way. A flag placed before the first click must stay
+	 */
+	private static void assertSameCounts(BoardEngine.RowWriter rows, long seed) {
+		SplittableRandom random = new SplittableRandom(seed);
+		for (int width : new int[] { 1, 63, 64, 65, 130, 1000 }) {
+			int height = 1 + random.nextInt(200);
+			int cells = width * height;
+			int flag = random.nextInt(cells);
+			int first = random.nextInt(cells);
+			BoardEngine board = new BoardEngine(width, height, random.nextInt(cells), random.nextLong());
+			board.toggleFlag(flag % width, flag / width);
+			board.generate(first % width, first / width);
+			Bitboard mines = board.mineBits();
+
+			for (boolean banded : new boolean[] { false, true }) {
+				BoardEngine counted = new BoardEngine(width, height, board.getNMines(), 0);
+				counted.toggleFlag(flag % width, flag / width);
+				counted.countMines(mines, banded, rows);
+				for (int c = 0; c < cells; c++) {
+					int x = c % width, y = c / width;
+					String cell = width + "x" + height + (banded ? " banded" : "") + " cell " + c;
+					assertEquals(board.hasMine(x, y), counted.hasMine(x, y), cell);
+					assertEquals(board.getAdjacentMines(x, y), counted.getAdjacentMines(x, y), cell);
+					assertEquals(board.isFlagged(x, y), counted.isFlagged(x, y), cell);
+				}
+			}
+		}
+	}
+
+	private static BoardEngine randomBoard(SplittableRandom random, Topology topology) {
+		int width = 1 + random.nextInt(30);
+		int height = 1 + random.nextInt(30);
+		int nMines = random.nextInt(width * height);
+		return new BoardEngine(width, height, nMines, random.nextLong(), topology);
+	}
+
+	/** Opens a safe cell and, if it is empty, everything a breadth first search reaches from it */
+	private static void flood(BoardEngine board, Topology topology, int start, boolean[] open) {
+		int width = board.getWidth(), height = board.getHeight();
+		ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+		open[start] = true;
+		queue.add(start);
+		while (!queue.isEmpty()) {
+			int c = queue.poll();
+			if (board.getAdjacentMines(c % width, c / width) > 0) {
+				continue;
+			}
+			for (int n : neighbours(topology, c % width, c / width, width, height)) {
+				if (!open[n] && !board.isFlagged(n % width, n / width)) {
+					open[n] = true;
+					queue.add(n);
+				}
+			}
+		}
+	}
+
+	/** The neighbours of (x, y) by the rules of the topology, without its tables */
+	private static List<Integer> neighbours(Topology topology, int x, int y, int width, int height) {
+		LinkedHashSet<Integer> cells = new LinkedHashSet<Integer>();
+		for (int j = -1; j <= 1; j++) {
+			for (int i = -1; i <= 1; i++) {
+				int nx = x + i, ny = y + j;
+				if (topology == Topology.TORUS) {
+					nx = Math.floorMod(nx, width);
+					ny = Math.floorMod(ny, height);
+				} else if (topology == Topology.HEX && j != 0 && i == ((y % 2 == 0) ? 1 : -1)) {
+					// offset rows touch only the two cells leaning their way
+					continue;
+				}
+				if (nx >= 0 && nx < width && ny >= 0 && ny < height && (nx != x || ny != y)) {
+					cells.add(ny * width + nx);
+				}
+			}
+		}
+		return new ArrayList<Integer>(cells);
+	}
+
+	/** Everything the player can see of the board */
+	private static String state(BoardEngine board) {
+		int[] cells = new int[board.getWidth() * board.getHeight()];
+		for (int c = 0; c < cells.length; c++) {
+			int x = c % board.getWidth(), y = c / board.getWidth();
+			cells[c] = (board.isRevealed(x, y) ? 1 : 0) | (board.isFlagged(x, y) ? 2 : 0);
+		}
+		return board.getStatus() + " " + board.getNumRevealed() + " " + board.getNumFlagged() + " "
+				+ board.getExplodedCell() + " " + Arrays.toString(cells);
+	}
+}
@@ -0,0 +1,95 @@
+package minesweeper;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Adds scores to a store and checks what it keeps, reads and writes */
+class HighScoreStoreTest {
+
+	private static final long EXPERT = HighScore.boardKey(new ExpertGame());
+
+	@TempDir
+	Path folder;
+
+	@Test
+	void keepsOnlyTheBestScores() {
+		HighScoreStore store = new HighScoreStore(3);
+		String file = folder.resolve("scores.swp").toString();
+		for (int time : new int[] { 50, 20, 40, 10, 30, 60 }) {
+			store.add(file, new HighScore("player" + time, "Expert", time));
+		}
+		assertEquals(List.of(10, 20, 30), times(store.getScores(file, EXPERT)));
+		assertTrue(store.qualifies(file, EXPERT, 29));
+		assertFalse(store.qualifies(file, EXPERT, 30));
+
+		// another board size has a list of its own
+		long custom = HighScore.boardKey(50, 40, 300);
+		assertTrue(store.qualifies(file, custom, 1000));
+		store.add(file, new HighScore("custom", "Custom", 1000, custom));
+		assertEquals(List.of(1000), times(store.getScores(file, custom)));
+		assertEquals(List.of(10, 20, 30), times(store.getScores(file, EXPERT)));
+	}
+
+	@Test
+	void readsTheFileAgainAfterAnotherWrite() {
+		HighScoreStore store = new HighScoreStore(3);
+		String file = folder.resolve("shared.swp").toString();
+		store.add(file, new HighScore("first", "Expert", 50));
+		store.flush();
+		assertEquals(List.of(50), times(store.getScores(file, EXPERT)));
+
+		// another copy of the game writes the file behind the store's back
+		List<HighScore> outside = new ArrayList<HighScore>();
+		outside.add(new HighScore("other", "Expert", 5));
+		outside.add(new HighScore("other", "Expert", 6));
+		ScoreFile.write(file, outside);
+		File f = new File(file);
+		f.setLastModified(f.lastModified() + 2000);
+
+		assertEquals(List.of(5, 6), times(store.getScores(file, EXPERT)));
+	}
+
+	@Test
+	void mergesTheWritesWaitingForAFile() throws IOException, InterruptedException {
+		HighScoreStore store = new HighScoreStore(5);
+		String file = folder.resolve("merged.swp").toString();
+		for (int time = 1; time <= 5; time++) {
+			store.add(file, new HighScore("player", "Expert", time));
+			// the scores waiting to be written are what the store shows
+			assertEquals(time, store.getScores(file, EXPERT).size());
+		}
+		store.flush();
+
+		List<HighScore> read = new ArrayList<HighScore>();
+		ScoreFile.read(file, read);
+		assertEquals(List.of(1, 2, 3, 4, 5), times(read));
+
+		// the flush took every waiting change, so the delayed write finds nothing left
+		Path path = folder.resolve("merged.swp");
+		byte[] written = Files.readAllBytes(path);
+		long modified = path.toFile().lastModified();
+		Thread.sleep(500);
+		assertArrayEquals(written, Files.readAllBytes(path));
+		assertEquals(modified, path.toFile().lastModified());
+	}
+
+	private static List<Integer> times(List<HighScore> scores) {
+		List<Integer> times = new ArrayList<Integer>();
+		for (HighScore score : scores) {
+			times.add(score.getScore());
+		}
+		return times;
+	}
+}
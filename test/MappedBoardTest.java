@@ -0,0 +1,184 @@
+package minesweeper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Plays the same moves on a mapped board and a {@link BoardEngine}, and opens
+ * mapped boards left by a session that stopped part way through a move
+ */
+class MappedBoardTest {
+
+	private static final int BOARDS = 200;
+	private static final int MOVES = 30;
+
+	// header offsets, as laid out by MappedBoard
+	private static final int STATUSAT = 6;
+	private static final int FLAGSAT = 7;
+	private static final int MINESAT = 16;
+	private static final int FIRSTCLICKAT = 44;
+	private static final int INMOVE = 2;
+
+	@TempDir
+	Path folder;
+
+	@Test
+	void playsTheSameAsTheEngine() throws IOException {
+		SplittableRandom random = new SplittableRandom(1);
+		String file = folder.resolve("board.msb").toString();
+		for (int b = 0; b < BOARDS; b++) {
+			int width = 1 + random.nextInt(40), height = 1 + random.nextInt(40);
+			int nMines = random.nextInt(width * height);
+			long seed = random.nextLong();
+			BoardEngine board = new BoardEngine(width, height, nMines, seed);
+			try (MappedBoard mapped = MappedBoard.create(file, width, height, nMines, seed)) {
+				for (int m = 0; m < MOVES && !board.isGameOver(); m++) {
+					int x = random.nextInt(width), y = random.nextInt(height);
+					switch (random.nextInt(3)) {
+					case 0:
+						assertEquals(board.reveal(x, y), mapped.reveal(x, y), "reveal on board " + b);
+						break;
+					case 1:
+						assertEquals(board.toggleFlag(x, y), mapped.toggleFlag(x, y), "flag on board " + b);
+						break;
+					default:
+						assertEquals(board.chord(x, y), mapped.chord(x, y), "chord on board " + b);
+					}
+					assertSameBoard(board, mapped, "board " + b + " move " + m);
+				}
+			}
+		}
+	}
+
+	@Test
+	void reopensAGameAsItWasLeft() throws IOException {
+		String file = folder.resolve("board.msb").toString();
+		BoardEngine board = new BoardEngine(30, 20, 80, 5);
+		try (MappedBoard mapped = MappedBoard.create(file, 30, 20, 80, 5)) {
+			board.reveal(10, 10);
+			mapped.reveal(10, 10);
+			board.toggleFlag(0, 0);
+			mapped.toggleFlag(0, 0);
+		}
+		try (MappedBoard mapped = MappedBoard.open(file)) {
+			assertSameBoard(board, mapped, "reopened");
+			assertEquals(board.getFirstClick(), mapped.getFirstClick());
+		}
+	}
+
+	@Test
+	void recountsAFillCutShort() throws IOException {
+		String file = folder.resolve("board.msb").toString();
+		BoardEngine board = new BoardEngine(30, 20, 80, 7);
+		try (MappedBoard mapped = MappedBoard.create(file, 30, 20, 80, 7)) {
+			board.reveal(3, 3);
+			mapped.reveal(3, 3);
+		}
+		// the counts in the header are stale, so the cells are counted again
+		poke(file, FLAGSAT, 1 | INMOVE);
+		poke(file, STATUSAT, 2);
+		try (MappedBoard mapped = MappedBoard.open(file)) {
+			assertSameBoard(board, mapped, "recounted");
+			assertEquals(board.getFirstClick(), mapped.getFirstClick());
+		}
+	}
+
+	@Test
+	void keepsTheMinesPlacedBeforeACrash() throws IOException {
+		String file = folder.resolve("board.msb").toString();
+		boolean[] mines = new boolean[30 * 30];
+		try (MappedBoard mapped = MappedBoard.create(file, 30, 30, 100, 7)) {
+			mapped.generate(3, 3);
+			for (int c = 0; c < mines.length; c++) {
+				mines[c] = mapped.hasMine(c % 30, c / 30);
+			}
+		}
+		poke(file, FLAGSAT, 1 | INMOVE);
+		try (MappedBoard mapped = MappedBoard.open(file)) {
+			assertTrue(mapped.isGenerated());
+			assertEquals(mapped.index(3, 3), mapped.getFirstClick());
+			mapped.reveal(3, 3);
+			for (int c = 0; c < mines.length; c++) {
+				assertEquals(mines[c], mapped.hasMine(c % 30, c / 30), "cell " + c);
+			}
+		}
+	}
+
+	@Test
+	void startsAgainWhenTheFirstClickWasNeverWritten() throws IOException {
+		String file = folder.resolve("board.msb").toString();
+		try (MappedBoard mapped = MappedBoard.create(file, 30, 30, 100, 7)) {
+			mapped.toggleFlag(0, 0);
+			mapped.generate(3, 3);
+		}
+		// stopped after the mines were placed but before the first click was written
+		poke(file, FLAGSAT, INMOVE);
+		pokeInt(file, FIRSTCLICKAT, -1);
+		try (MappedBoard mapped = MappedBoard.open(file)) {
+			assertFalse(mapped.isGenerated());
+			assertEquals(-1, mapped.getFirstClick());
+			assertEquals(1, mapped.getNumFlagged());
+			assertTrue(mapped.isFlagged(0, 0));
+
+			BoardEngine board = new BoardEngine(30, 30, 100, 7);
+			board.toggleFlag(0, 0);
+			assertEquals(board.reveal(20, 20), mapped.reveal(20, 20));
+			assertSameBoard(board, mapped, "placed again");
+		}
+	}
+
+	@Test
+	void rejectsADamagedHeader() throws IOException {
+		String file = folder.resolve("board.msb").toString();
+		MappedBoard.create(file, 10, 10, 10, 1).close();
+		poke(file, STATUSAT, 9);
+		assertThrows(IOException.class, () -> MappedBoard.open(file));
+		poke(file, STATUSAT, 0);
+		pokeInt(file, MINESAT, 5000);
+		assertThrows(IOException.class, () -> MappedBoard.open(file));
+	}
+
+	private static void assertSameBoard(BoardEngine expected, MappedBoard actual, String message) {
+		for (int y = 0; y < expected.getHeight(); y++) {
+			for (int x = 0; x < expected.getWidth(); x++) {
+				String cell = message + " cell " + x + "," + y;
+				assertEquals(expected.isRevealed(x, y), actual.isRevealed(x, y), cell);
+				assertEquals(expected.isFlagged(x, y), actual.isFlagged(x, y), cell);
+				if (expected.isGenerated()) {
+					assertEquals(expected.hasMine(x, y), actual.hasMine(x, y), cell);
+					assertEquals(expected.getAdjacentMines(x, y), actual.getAdjacentMines(x, y), cell);
+				}
+			}
+		}
+		assertEquals(expected.isGenerated(), actual.isGenerated(), message);
+		assertEquals(expected.getStatus(), actual.getStatus(), message);
+		assertEquals(expected.getNumRevealed(), actual.getNumRevealed(), message);
+		assertEquals(expected.getNumFlagged(), actual.getNumFlagged(), message);
+		assertEquals(expected.getHiddenSafe(), actual.getHiddenSafe(), message);
+		assertEquals(expected.getExplodedCell(), actual.getExplodedCell(), message);
+	}
+
+	private static void poke(String file, int at, int value) throws IOException {
+		try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+			output.seek(at);
+			output.writeByte(value);
+		}
+	}
+
+	private static void pokeInt(String file, int at, int value) throws IOException {
+		try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+			output.seek(at);
+			output.writeInt(value);
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package minesweeper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Writes replays and reads them back whole, cut short and damaged */
+class ReplayTest {
+
+	// where the fields of a file start
+	private static final int VERSIONAT = 4;
+	private static final int LENGTHAT = 30;
+
+	@TempDir
+	Path folder;
+
+	@Test
+	void readsBackEveryInput() throws IOException {
+		SplittableRandom random = new SplittableRandom(1);
+		Replay replay = new Replay(30, 16, 99);
+		replay.setSeed(42);
+		int[] cells = new int[1000];
+		int[] buttons = new int[cells.length];
+		long[] gaps = new long[cells.length];
+		for (int i = 0; i < cells.length; i++) {
+			cells[i] = random.nextInt(30 * 16);
+			buttons[i] = random.nextInt(3);
+			gaps[i] = (i % 100 == 0) ? Long.MAX_VALUE >> random.nextInt(60) : random.nextInt(2000);
+			replay.record(cells[i], buttons[i], gaps[i]);
+		}
+		Replay read = Replay.read(write(replay));
+
+		assertEquals(30, read.getWidth());
+		assertEquals(16, read.getHeight());
+		assertEquals(99, read.getNMines());
+		assertEquals(42, read.getSeed());
+		assertEquals(cells.length, read.getCount());
+		Replay.Cursor cursor = read.cursor();
+		for (int i = 0; i < cells.length; i++) {
+			assertTrue(cursor.next());
+			assertEquals(cells[i], cursor.getCell());
+			assertEquals(buttons[i], cursor.getButton());
+			assertEquals(gaps[i], cursor.getGap());
+		}
+		assertFalse(cursor.next());
+	}
+
+	@Test
+	void rejectsAnotherFile() throws IOException {
+		Path file = folder.resolve("other.msr");
+		Files.write(file, "not a replay at all, just some text".getBytes());
+		assertThrows(IOException.class, () -> Replay.read(file.toString()));
+	}
+
+	@Test
+	void rejectsANewerVersion() throws IOException {
+		byte[] bytes = sample();
+		ByteBuffer.wrap(bytes).putShort(VERSIONAT, Short.MAX_VALUE);
+		assertThrows(IOException.class, () -> Replay.read(write(bytes)));
+	}
+
+	@Test
+	void rejectsEveryCutShortFile() throws IOException {
+		byte[] bytes = sample();
+		for (int length = 0; length < bytes.length; length++) {
+			String file = write(Arrays.copyOf(bytes, length));
+			assertThrows(IOException.class, () -> Replay.read(file), "cut to " + length);
+		}
+	}
+
+	@Test
+	void rejectsEveryDamagedByte() throws IOException {
+		byte[] bytes = sample();
+		for (int i = 0; i < bytes.length; i++) {
+			byte[] damaged = bytes.clone();
+			damaged[i] ^= 0x10;
+			String file = write(damaged);
+			assertThrows(IOException.class, () -> Replay.read(file), "byte " + i);
+		}
+	}
+
+	@Test
+	void rejectsALengthPastTheEndOfTheFile() throws IOException {
+		byte[] bytes = sample();
+		ByteBuffer.wrap(bytes).putInt(LENGTHAT, Integer.MAX_VALUE);
+		assertThrows(IOException.class, () -> Replay.read(write(bytes)));
+	}
+
+	@Test
+	void rejectsABoardFullOfMines() throws IOException {
+		assertThrows(IOException.class, () -> Replay.read(write(new Replay(8, 8, 64))));
+	}
+
+	@Test
+	void rejectsABoardTooLargeToIndex() throws IOException {
+		assertThrows(IOException.class, () -> Replay.read(write(new Replay(65536, 65536, 10))));
+	}
+
+	/** The bytes of a short replay */
+	private byte[] sample() throws IOException {
+		Replay replay = new Replay(9, 9, 10);
+		for (int i = 0; i < 20; i++) {
+			replay.record(i * 4, i % 3, i * 150);
+		}
+		return Files.readAllBytes(Path.of(write(replay)));
+	}
+
+	private String write(Replay replay) throws IOException {
+		String file = Files.createTempFile(folder, "replay", ".msr").toString();
+		replay.write(file);
+		return file;
+	}
+
+	private String write(byte[] bytes) throws IOException {
+		Path file = Files.createTempFile(folder, "replay", ".msr");
+		Files.write(file, bytes);
+		return file.toString();
+	}
+}
@@ -0,0 +1,189 @@
+package minesweeper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Saves games on every topology and reads them back whole, cut short and damaged */
+class SavedGameTest {
+
+	private static final int GAMES = 100;
+
+	@TempDir
+	Path folder;
+
+	@Test
+	void readsBackGamesInPlay() throws IOException {
+		SplittableRandom random = new SplittableRandom(1);
+		for (Topology topology : Topology.values()) {
+			for (int g = 0; g < GAMES; g++) {
+				int width = 1 + random.nextInt(40), height = 1 + random.nextInt(40);
+				BoardEngine board = new BoardEngine(width, height, random.nextInt(width * height), random.nextLong(),
+						topology);
+				play(board, random, 1 + random.nextInt(40));
+				if (board.isGenerated()) {
+					assertSameGame(board, roundTrip(board, new CustomGame(width, height, board.getNMines())),
+							topology.toString());
+				}
+			}
+		}
+	}
+
+	@Test
+	void readsBackALostGame() throws IOException {
+		SplittableRandom random = new SplittableRandom(2);
+		for (Topology topology : Topology.values()) {
+			BoardEngine board = new BoardEngine(32, 16, 99, random.nextLong(), topology);
+			while (!board.isGameOver()) {
+				play(board, random, 1);
+			}
+			assertSameGame(board, roundTrip(board, new ExpertGame()), topology.toString());
+		}
+	}
+
+	@Test
+	void readsBackMinesNotPlacedFromTheSeed() throws IOException {
+		SplittableRandom random = new SplittableRandom(3);
+		for (Topology topology : Topology.values()) {
+			BoardEngine board = new BoardEngine(32, 16, 99, 0, topology);
+			BitSet mines = new BitSet();
+			while (mines.cardinality() < 99) {
+				mines.set(random.nextInt(32 * 16));
+			}
+			board.restoreMines(mines);
+			play(board, random, 20);
+			assertSameGame(board, roundTrip(board, new ExpertGame()), topology.toString());
+		}
+	}
+
+	@Test
+	void keepsTheDifficultyAndClock() throws IOException {
+		BoardEngine board = new BoardEngine(8, 8, 10, 5);
+		board.reveal(4, 4);
+		String file = folder.resolve("beginner.mss").toString();
+		new SavedGame(new BeginnerGame(), board, 37).write(file);
+
+		SavedGame read = SavedGame.read(file);
+		assertEquals(ScoreDifficulty.BEGINNER, read.getDifficulty().getDifficulty());
+		assertEquals(37, read.getElapsed());
+	}
+
+	@Test
+	void rejectsAPresetOfAnotherSize() throws IOException {
+		BoardEngine board = new BoardEngine(16, 16, 40, 5);
+		board.reveal(8, 8);
+		String file = folder.resolve("resized.mss").toString();
+		new SavedGame(new BeginnerGame(), board, 0).write(file);
+		assertThrows(IOException.class, () -> SavedGame.read(file));
+	}
+
+	@Test
+	void refusesAGameNotStarted() {
+		BoardEngine board = new BoardEngine(8, 8, 10, 5);
+		assertThrows(IllegalArgumentException.class, () -> new SavedGame(new BeginnerGame(), board, 0));
+	}
+
+	@Test
+	void neverMisreadsACutShortFile() throws IOException {
+		BoardEngine board = sampleBoard();
+		byte[] bytes = write(board);
+		int rejected = 0;
+		for (int length = 0; length < bytes.length; length++) {
+			rejected += assertRejectedOrSame(board, Arrays.copyOf(bytes, length), "cut to " + length) ? 1 : 0;
+		}
+		assertTrue(rejected > bytes.length / 2);
+	}
+
+	@Test
+	void neverMisreadsADamagedFile() throws IOException {
+		BoardEngine board = sampleBoard();
+		byte[] bytes = write(board);
+		int rejected = 0;
+		for (int i = 0; i < bytes.length; i++) {
+			byte[] damaged = bytes.clone();
+			damaged[i] ^= 0x10;
+			rejected += assertRejectedOrSame(board, damaged, "byte " + i) ? 1 : 0;
+		}
+		assertTrue(rejected > bytes.length / 2);
+	}
+
+	/** Makes random moves, half of them flags */
+	private static void play(BoardEngine board, SplittableRandom random, int moves) {
+		for (int m = 0; m < moves && !board.isGameOver(); m++) {
+			int x = random.nextInt(board.getWidth()), y = random.nextInt(board.getHeight());
+			int button = random.nextInt(4);
+			if (button == 0 || button == 1) {
+				board.toggleFlag(x, y);
+			} else if (button == 2) {
+				board.chord(x, y);
+			} else {
+				board.reveal(x, y);
+			}
+		}
+	}
+
+	private BoardEngine roundTrip(BoardEngine board, Difficulty difficulty) throws IOException {
+		String file = Files.createTempFile(folder, "game", ".mss").toString();
+		new SavedGame(difficulty, board, 0).write(file);
+		return SavedGame.read(file).getBoard();
+	}
+
+	private static void assertSameGame(BoardEngine expected, BoardEngine actual, String message) {
+		assertEquals(expected.getTopology(), actual.getTopology(), message);
+		assertEquals(expected.getStatus(), actual.getStatus(), message);
+		assertEquals(expected.getFirstClick(), actual.getFirstClick(), message);
+		assertEquals(expected.getExplodedCell(), actual.getExplodedCell(), message);
+		assertEquals(expected.getNumRevealed(), actual.getNumRevealed(), message);
+		assertEquals(expected.getNumFlagged(), actual.getNumFlagged(), message);
+		for (int y = 0; y < expected.getHeight(); y++) {
+			for (int x = 0; x < expected.getWidth(); x++) {
+				String cell = message + " (" + x + ", " + y + ")";
+				assertEquals(expected.hasMine(x, y), actual.hasMine(x, y), cell);
+				assertEquals(expected.isRevealed(x, y), actual.isRevealed(x, y), cell);
+				assertEquals(expected.isFlagged(x, y), actual.isFlagged(x, y), cell);
+			}
+		}
+	}
+
+	/**
+	 * A file must be read as the game saved or not at all. The end of the
+	 * deflated stream is never read once the planes are whole, and the
+	 * checksum covers what they hold, so damage there is harmless. Returns
+	 * true if the file was rejected
+	 */
+	private boolean assertRejectedOrSame(BoardEngine board, byte[] bytes, String message) throws IOException {
+		Path file = Files.createTempFile(folder, "game", ".mss");
+		Files.write(file, bytes);
+		BoardEngine read;
+		try {
+			read = SavedGame.read(file.toString()).getBoard();
+		} catch (IOException e) {
+			return true;
+		}
+		assertSameGame(board, read, message);
+		return false;
+	}
+
+	private static BoardEngine sampleBoard() {
+		BoardEngine board = new BoardEngine(16, 16, 40, 11, Topology.HEX);
+		board.toggleFlag(0, 0);
+		board.reveal(8, 8);
+		return board;
+	}
+
+	private byte[] write(BoardEngine board) throws IOException {
+		Path file = Files.createTempFile(folder, "game", ".mss");
+		new SavedGame(new IntermediateGame(), board, 12).write(file.toString());
+		return Files.readAllBytes(file);
+	}
+}
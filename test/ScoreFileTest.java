@@ -0,0 +1,108 @@
+package minesweeper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Writes score files and reads them back whole, cut short and damaged */
+class ScoreFileTest {
+
+	@TempDir
+	Path folder;
+
+	@Test
+	void readsBackEveryScore() {
+		List<HighScore> scores = sample();
+		String file = folder.resolve("scores.swp").toString();
+		ScoreFile.write(file, scores);
+
+		List<HighScore> read = new ArrayList<HighScore>();
+		ScoreFile.read(file, read);
+		assertEquals(scores.size(), read.size());
+		for (int i = 0; i < scores.size(); i++) {
+			assertEquals(scores.get(i).getName(), read.get(i).getName());
+			assertEquals(scores.get(i).getDifficulty(), read.get(i).getDifficulty());
+			assertEquals(scores.get(i).getScore(), read.get(i).getScore());
+			assertEquals(scores.get(i).getBoard(), read.get(i).getBoard());
+		}
+	}
+
+	@Test
+	void cutsLongNamesBetweenCharacters() {
+		String name = "\u00E9".repeat(40);
+		List<HighScore> scores = new ArrayList<HighScore>();
+		scores.add(new HighScore(name, "Beginner", 10));
+		String file = folder.resolve("long.swp").toString();
+		ScoreFile.write(file, scores);
+
+		List<HighScore> read = new ArrayList<HighScore>();
+		ScoreFile.read(file, read);
+		// 63 bytes hold 31 two byte characters
+		assertEquals(name.substring(0, 31), read.get(0).getName());
+	}
+
+	@Test
+	void aMissingFileHasNoScores() {
+		List<HighScore> read = new ArrayList<HighScore>(sample());
+		ScoreFile.read(folder.resolve("missing.swp").toString(), read);
+		assertTrue(read.isEmpty());
+	}
+
+	@Test
+	void aCutShortFileHasNoScores() throws IOException {
+		byte[] bytes = written();
+		for (int length = 1; length < bytes.length; length++) {
+			assertTrue(read(Arrays.copyOf(bytes, length)).isEmpty(), "cut to " + length);
+		}
+	}
+
+	@Test
+	void aDamagedFileHasNoScores() throws IOException {
+		byte[] bytes = written();
+		// a damaged magic number reads as the headerless format, so start at the checksum
+		for (int i = 4; i < bytes.length; i++) {
+			byte[] damaged = bytes.clone();
+			damaged[i] ^= 0x10;
+			assertTrue(read(damaged).isEmpty(), "byte " + i);
+		}
+	}
+
+	@Test
+	void deleteRemovesTheFile() {
+		String file = folder.resolve("gone.swp").toString();
+		ScoreFile.write(file, sample());
+		ScoreFile.delete(file);
+		assertTrue(Files.notExists(folder.resolve("gone.swp")));
+	}
+
+	private static List<HighScore> sample() {
+		List<HighScore> scores = new ArrayList<HighScore>();
+		scores.add(new HighScore("Ada", "Beginner", 7));
+		scores.add(new HighScore("Grace", "Expert", 95));
+		scores.add(new HighScore("Edsger", "Custom", 120, HighScore.boardKey(50, 40, 300)));
+		return scores;
+	}
+
+	private byte[] written() throws IOException {
+		Path file = folder.resolve("written.swp");
+		ScoreFile.write(file.toString(), sample());
+		return Files.readAllBytes(file);
+	}
+
+	private List<HighScore> read(byte[] bytes) throws IOException {
+		Path file = Files.createTempFile(folder, "scores", ".swp");
+		Files.write(file, bytes);
+		List<HighScore> read = new ArrayList<HighScore>();
+		ScoreFile.read(file.toString(), read);
+		return read;
+	}
+}
@@ -0,0 +1,76 @@
+package minesweeper;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The row writer of {@link BoardEngine} on the Vector API. Each of the five
+ * bit planes of a word is spread out to one byte per cell, by copying the
+ * word into every lane, moving byte j / 8 of it to lane j and keeping only
+ * bit j % 8, and the spread planes set their bit of a whole vector of cells at
+ * once. Words with no mine in or around them are skipped, as the scalar
+ * writer skips them, and the last word of a row, cut short by the edge of
+ * the board, is written one cell at a time.
+ * <p>
+ * Loaded by name only when the incubator module is in the boot layer, so the
+ * rest of the game never links against it.
+ */
+final class VectorRows implements BoardEngine.RowWriter {
+
+	// a word holds 64 cells, so no more than 64 lanes are used
+	private static final VectorSpecies<Byte> SPECIES = (ByteVector.SPECIES_PREFERRED.length() > 64)
+			? ByteVector.SPECIES_512
+			: ByteVector.SPECIES_PREFERRED;
+	private static final VectorSpecies<Long> WORDS = SPECIES.withLanes(long.class);
+	private static final int LANES = SPECIES.length();
+
+	private static final VectorShuffle<Byte> SPREAD = VectorShuffle.fromOp(SPECIES, j -> j / 8);
+	private static final ByteVector BIT = ByteVector.broadcast(SPECIES, (byte) 1).lanewise(VectorOperators.LSHL,
+			ByteVector.zero(SPECIES).addIndex(1).and((byte) 7));
+
+	@Override
+	public void write(byte[] cells, int base, int width, Bitboard mines, int y, long[] sums) {
+		int words = mines.getWords();
+		ByteVector zero = ByteVector.zero(SPECIES);
+		for (int w = 0; w < words; w++) {
+			long mine = mines.word(y, w);
+			long ones = sums[Bitboard.ONES * words + w];
+			long twos = sums[Bitboard.TWOS * words + w];
+			long fours = sums[Bitboard.FOURS * words + w];
+			long eights = sums[Bitboard.EIGHTS * words + w];
+			if ((mine | ones | twos | fours | eights) == 0) {
+				continue;
+			}
+			int x = w << 6;
+			if (x + 64 > width) {
+				for (long set = mine | ones | twos | fours | eights; set != 0; set &= set - 1) {
+					int b = Long.numberOfTrailingZeros(set);
+					int bits = (int) ((ones >>> b) & 1) | (int) ((twos >>> b) & 1) << 1
+							| (int) ((fours >>> b) & 1) << 2 | (int) ((eights >>> b) & 1) << 3
+							| (int) ((mine >>> b) & 1) << 4;
+					cells[base + x + b] = (byte) ((cells[base + x + b] & KEEP) | bits);
+				}
+				continue;
+			}
+			for (int lane = 0; lane < 64; lane += LANES) {
+				ByteVector bits = zero.blend((byte) 1, spread(ones >>> lane))
+						.or(zero.blend((byte) 2, spread(twos >>> lane)))
+						.or(zero.blend((byte) 4, spread(fours >>> lane)))
+						.or(zero.blend((byte) 8, spread(eights >>> lane)))
+						.or(zero.blend((byte) 16, spread(mine >>> lane)));
+				int at = base + x + lane;
+				ByteVector.fromArray(SPECIES, cells, at).and((byte) KEEP).or(bits).intoArray(cells, at);
+			}
+		}
+	}
+
+	/** The lanes whose bit of the word is set, lane j taking bit j */
+	private static VectorMask<Byte> spread(long bits) {
+		return LongVector.broadcast(WORDS, bits).reinterpretAsBytes().rearrange(SPREAD).and(BIT)
+				.compare(VectorOperators.NE, 0);
+	}
+}